@@ -0,0 +1,75 @@
+package Sulfur;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cold versus warm startup: getting a program ready to resolve by lexing, parsing, and optimizing its source,
+ * compared to hashing the source and loading the tree from a .sufc file that has already been read into memory.
+ * The SingleShotTime runs measure the first load in a fresh JVM, which is closer to running a short script once.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AstCacheBenchmark {
+
+	// Size of the source in characters
+	@Param({"4096", "65536"})
+	public int size;
+
+	private String code;
+	private byte[] source;
+	private byte[] tree;
+
+	@Setup
+	public void setup() throws IOException {
+		code = Programs.source(size);
+		source = code.getBytes(StandardCharsets.UTF_8);
+		tree = AstCache.serialize(Optimizer.optimize(new Parser(new Lexer(code).lex()).parse()));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public Expr.StatementBlock parse() {
+		return Optimizer.optimize(new Parser(new Lexer(code).lex()).parse());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public Expr.StatementBlock load() throws IOException {
+		AstCache.key(source, true);
+		return AstCache.deserialize(tree);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public Expr.StatementBlock coldParse() {
+		return parse();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public Expr.StatementBlock coldLoad() throws IOException {
+		return load();
+	}
+}
@@ -0,0 +1,35 @@
+package Sulfur;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Main class of target/benchmarks.jar.
+ * Takes the same options as the normal JMH runner, but writes the results as JSON (to jmh-result.json by default) unless -rf says otherwise
+ * so runs on different commits can be compared.
+ * EX: java -jar jmh/target/benchmarks.jar FrontEndBenchmark -rff before.json
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		CommandLineOptions cmdOptions;
+		try {
+			cmdOptions = new CommandLineOptions(args);
+		} catch(CommandLineOptionException e) {
+			System.err.println("Error parsing command line: "+e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+		// JMH names the file after the format when -rff isn't given
+		if(!cmdOptions.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,56 @@
+package Sulfur;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Executions per second of a small script through SulfurScript, compiled once and executed over and over,
+ * compared to compiling it again for every execution like running it through Main does.
+ * The script finds the primes below a limit that is passed in as a binding.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddingBenchmark {
+	private static final String CODE = Programs.primefinder(0).replace("num<0", "num<limit");
+
+	@Param({"10", "200"})
+	public int limit;
+
+	private SulfurScript compiled;
+	private Map<String, Object> bindings;
+	private OutputSink out;
+
+	@Setup
+	public void setup() {
+		compiled = SulfurScript.compile(CODE, "limit");
+		bindings = Map.of("limit", limit);
+		out = new OutputSink.StreamSink(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public Termination compileOnce() {
+		return compiled.execute(bindings, out);
+	}
+
+	@Benchmark
+	public Termination compileEveryTime() {
+		return SulfurScript.compile(CODE, "limit").execute(bindings, out);
+	}
+}
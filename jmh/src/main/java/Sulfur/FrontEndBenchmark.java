@@ -0,0 +1,83 @@
+package Sulfur;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Throughput of the stages that run before a program does: Lexer.lex(), Parser.parse(), and Optimizer.optimize(), plus lexing and parsing together.
+ * Each stage gets the output of the stages before it already made, so only that stage is measured.
+ * Besides operations per second, every benchmark reports the megabytes of source it got through per second as the "megabytes" metric.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrontEndBenchmark {
+
+	// Size of the source in characters
+	@Param({"65536", "1048576"})
+	public int size;
+
+	private String code;
+	private TokenBuffer tokens;
+	private Expr.StatementBlock program;
+
+	@Setup
+	public void setup() {
+		code = Programs.source(size);
+		tokens = new Lexer(code).lex();
+		program = new Parser(tokens).parse();
+	}
+
+	// Counted per second, so it comes out in MB/s
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Source {
+		public double megabytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+		}
+	}
+
+	@Benchmark
+	public TokenBuffer lex(Source source) {
+		source.megabytes += code.length() / 1e6;
+		return new Lexer(code).lex();
+	}
+
+	@Benchmark
+	public Expr.StatementBlock parse(Source source) {
+		source.megabytes += code.length() / 1e6;
+		return new Parser(tokens).parse();
+	}
+
+	// The Parser makes the Token objects the tree keeps, so some of the work moves between lex and parse depending on how tokens are stored
+	@Benchmark
+	public Expr.StatementBlock lexAndParse(Source source) {
+		source.megabytes += code.length() / 1e6;
+		return new Parser(new Lexer(code).lex()).parse();
+	}
+
+	// The Optimizer builds a new tree, so the parsed program can be optimized again every time
+	@Benchmark
+	public Expr.StatementBlock optimize(Source source) {
+		source.megabytes += code.length() / 1e6;
+		return Optimizer.optimize(program);
+	}
+}
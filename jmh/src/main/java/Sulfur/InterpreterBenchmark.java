@@ -0,0 +1,62 @@
+package Sulfur;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * End to end Interpreter.run() on scaled versions of the primefinder, factorial, and array examples.
+ * The programs are compiled once ahead of time, so this only measures running them. Output is thrown away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+
+	@Param({"1", "10"})
+	public int scale;
+
+	private Expr.StatementBlock primefinder;
+	private Expr.StatementBlock factorial;
+	private Expr.StatementBlock array;
+
+	@Setup
+	public void setup() {
+		primefinder = Programs.compile(Programs.primefinder(2000 * scale));
+		factorial = Programs.compile(Programs.factorial(1000 * scale));
+		array = Programs.compile(Programs.array(10000 * scale));
+	}
+
+	private static Termination run(Expr.StatementBlock program) {
+		return new Interpreter(program, new OutputSink.StreamSink(OutputStream.nullOutputStream(), StandardCharsets.UTF_8)).run();
+	}
+
+	@Benchmark
+	public Termination primefinder() {
+		return run(primefinder);
+	}
+
+	@Benchmark
+	public Termination factorial() {
+		return run(factorial);
+	}
+
+	@Benchmark
+	public Termination array() {
+		return run(array);
+	}
+}
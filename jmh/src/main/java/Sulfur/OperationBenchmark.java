@@ -0,0 +1,127 @@
+package Sulfur;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Time taken by the OperationPerformer for each arithmetic and comparison operator on every pair of operand types.
+ * The operands are boxed exactly like the Interpreter passes them, so this includes finding the operation for their types and converting both sides.
+ * Strings and booleans only work with a few operators and only with their own type, so they are measured separately in NonNumeric.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OperationBenchmark {
+
+	// Left then right operand type: N (int), L (long), F (float), D (double), C (char)
+	@Param({"NN", "NL", "NF", "ND", "NC", "LN", "LL", "LF", "LD", "LC", "FN", "FL", "FF", "FD", "FC",
+			"DN", "DL", "DF", "DD", "DC", "CN", "CL", "CF", "CD", "CC"})
+	public String types;
+
+	private Object left;
+	private Object right;
+
+	@Setup
+	public void setup() {
+		left = value(types.charAt(0));
+		right = value(types.charAt(1));
+	}
+
+	private static Object value(char type) {
+		switch(type) {
+		case 'N':
+			return 123456;
+		case 'L':
+			return 9876543210L;
+		case 'F':
+			return 1.5f;
+		case 'D':
+			return 3.25;
+		case 'C':
+			return 'x';
+		default:
+			throw new IllegalArgumentException("Unknown operand type "+type);
+		}
+	}
+
+	@Benchmark
+	public Object add() {
+		return OperationPerformer.add(left, right, 0);
+	}
+
+	@Benchmark
+	public Object sub() {
+		return OperationPerformer.sub(left, right, 0);
+	}
+
+	@Benchmark
+	public Object multiply() {
+		return OperationPerformer.multiply(left, right, 0);
+	}
+
+	@Benchmark
+	public Object divide() {
+		return OperationPerformer.divide(left, right, 0);
+	}
+
+	@Benchmark
+	public Object modulus() {
+		return OperationPerformer.modulus(left, right, 0);
+	}
+
+	@Benchmark
+	public Object lessThan() {
+		return OperationPerformer.less_than(left, right, 0);
+	}
+
+	@Benchmark
+	public Object equality() {
+		return OperationPerformer.equality(left, right, 0);
+	}
+
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	@Fork(1)
+	@State(Scope.Thread)
+	public static class NonNumeric {
+		private Object string = "some string";
+		private Object otherString = "other string";
+		private Object bool = true;
+		private Object otherBool = false;
+
+		@Benchmark
+		public Object stringAdd() {
+			return OperationPerformer.add(string, otherString, 0);
+		}
+
+		@Benchmark
+		public Object stringEquality() {
+			return OperationPerformer.equality(string, otherString, 0);
+		}
+
+		@Benchmark
+		public Object booleanAnd() {
+			return OperationPerformer.and(bool, otherBool, 0);
+		}
+
+		@Benchmark
+		public Object booleanEquality() {
+			return OperationPerformer.equality(bool, otherBool, 0);
+		}
+	}
+}
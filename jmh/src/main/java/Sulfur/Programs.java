@@ -0,0 +1,72 @@
+package Sulfur;
+
+/*
+ * Scaled versions of the example programs used by the benchmarks.
+ * Each one takes a size, so the same program can be measured doing a little or a lot of work.
+ */
+public class Programs {
+
+	// example/primefinder.suf, prints every prime below limit
+	public static String primefinder(int limit) {
+		return "A num NV 2\n"
+				+ "W num<"+limit+" Y\n"
+				+ "A is_prime BV T\n"
+				+ "A divisor NV 2\n"
+				+ "W divisor<num Y\n"
+				+ "I num%divisor=0 Y\nA is_prime BV U\nJ\nZ\n"
+				+ "A divisor NV divisor+1\n"
+				+ "Z\n"
+				+ "I is_prime Y\nP(num)\nP(\"\\n\")\nZ\n"
+				+ "A num NV num+1\n"
+				+ "Z\n";
+	}
+
+	// The recursive factorial from example/function.suf, called repeats times
+	public static String factorial(int repeats) {
+		return "A fac FLV (N x) Y\n"
+				+ "I x=0|x=1 Y\nR 1\nZ E Y\nR x*fac(x-1)\nZ\n"
+				+ "Z\n"
+				+ "A i NV 0\n"
+				+ "A total LV 0\n"
+				+ "W i<"+repeats+" Y\n"
+				+ "A total LV total+fac(20)%1000\n"
+				+ "A i NV i+1\n"
+				+ "Z\n"
+				+ "P(total, '\\n')\n";
+	}
+
+	// example/array.suf with size elements, copied by a function and then searched
+	public static String array(int size) {
+		return "A src N[]V{}\n"
+				+ "A dst N[]V{}\n"
+				+ "A i NV 0\n"
+				+ "W i<"+size+" Y\nsrc~add(i*3)\nA i NV i+1\nZ\n"
+				+ "A add_all FV (N[] src, N[] dst) Y\n"
+				+ "A idx NV 0\n"
+				+ "W idx<src~length() Y\ndst~add(src~get(idx))\nA idx NV idx+1\nZ\n"
+				+ "Z\n"
+				+ "add_all(src, dst)\n"
+				+ "A sum LV 0\n"
+				+ "A idx NV 0\n"
+				+ "W idx<dst~size() Y\nA sum LV sum+dst~get(idx)\nA idx NV idx+1\nZ\n"
+				+ "P(sum, ' ', dst~indexof("+(size / 2 * 3)+"), '\\n')\n";
+	}
+
+	// All three programs repeated until the source is at least size characters long, for the lexer and parser
+	public static String source(int size) {
+		String unit = "M# Scaled copy of the example programs #M\n" + primefinder(100) + factorial(10) + array(10);
+		StringBuilder code = new StringBuilder(size + unit.length());
+		while(code.length() < size) {
+			code.append(unit);
+		}
+		return code.toString();
+	}
+
+	// Lexes, parses, optimizes, and resolves a program so it is ready to run
+	public static Expr.StatementBlock compile(String code) {
+		Expr.StatementBlock program = new Parser(new Lexer(code).lex()).parse();
+		program = Optimizer.optimize(program);
+		new Resolver().resolve(program);
+		return program;
+	}
+}
@@ -0,0 +1,56 @@
+package Sulfur;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/*
+ * How many bytes the Interpreter allocates, and how long it takes, to run each .suf file in a directory.
+ * Allocation is what turns into GC work, so this shows how much garbage symbol tables and boxed values create.
+ * Only the thread running the program is counted, so programs that start tasks are skipped.
+ * Usage: AllocationBenchmark [directory] [runs], which defaults to the example folder and 20 runs.
+ */
+public class AllocationBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "example");
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".suf"));
+		if(files == null) {
+			System.out.println("Error: "+dir+" is not a directory.");
+			System.exit(1);
+		}
+		Arrays.sort(files);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		System.out.println("file\tKB/run\tms/run");
+		for(File f : files) {
+			String code = Files.readString(f.toPath());
+			if(code.contains("X ")) {
+				continue;
+			}
+			Expr.StatementBlock program = Optimizer.optimize(new Parser(new Lexer(code).lex()).parse());
+			new Resolver().resolve(program);
+
+			for(int i = 0; i < runs; i++) {
+				run(program);
+			}
+			long bytes = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for(int i = 0; i < runs; i++) {
+				run(program);
+			}
+			long elapsed = System.nanoTime() - start;
+			bytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+			System.out.printf("%s\t%.1f\t%.3f%n", f.getName(), bytes / 1024.0 / runs, elapsed / 1e6 / runs);
+		}
+	}
+
+	private static void run(Expr.StatementBlock program) {
+		new Interpreter(program, new OutputSink.StreamSink(OutputStream.nullOutputStream(), StandardCharsets.UTF_8)).run();
+	}
+}
@@ -0,0 +1,69 @@
+package Sulfur;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Compares how many scripts per second BatchRunner gets through by running them all in this JVM
+ * against starting a new JVM running Main for each script, with the same number of scripts running at once either way.
+ * Every .suf file in the directory is run copies times so there is enough work to spread over the threads.
+ * Usage: BatchBenchmark [directory] [copies] [threads], which defaults to the example folder, 4 copies, and one thread per CPU.
+ */
+public class BatchBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		File dir = new File(args.length > 0 ? args[0] : "example");
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".suf"));
+		if(files == null) {
+			System.out.println("Error: "+dir+" is not a directory.");
+			System.exit(1);
+		}
+		List<File> scripts = new ArrayList<File>();
+		for(int i = 0; i < copies; i++) {
+			scripts.addAll(Arrays.asList(files));
+		}
+
+		// One untimed round so the in process numbers aren't mostly JIT warmup, a new JVM never gets that
+		BatchRunner.runAll(scripts, threads, null, Limits.NONE);
+		long start = System.nanoTime();
+		BatchRunner.runAll(scripts, threads, null, Limits.NONE);
+		long inProcess = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		runInProcesses(scripts, threads);
+		long perProcess = System.nanoTime() - start;
+
+		System.out.println("mode\tscripts\tms\tscripts/s");
+		System.out.printf("one jvm\t%d\t%.2f\t%.1f%n", scripts.size(), inProcess / 1e6, scripts.size() / (inProcess / 1e9));
+		System.out.printf("jvm per script\t%d\t%.2f\t%.1f%n", scripts.size(), perProcess / 1e6, scripts.size() / (perProcess / 1e9));
+		System.out.printf("speedup\t%.1fx%n", (double) perProcess / inProcess);
+	}
+
+	// Runs java Sulfur.Main on every script with this JVM's class path, threads processes at a time
+	private static void runInProcesses(List<File> scripts, int threads) throws Exception {
+		String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		String classPath = System.getProperty("java.class.path");
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> exits = new ArrayList<Future<Integer>>();
+			for(File script : scripts) {
+				exits.add(pool.submit(() -> {
+					Process process = new ProcessBuilder(java, "-cp", classPath, "Sulfur.Main", "--no-cache", script.getPath())
+							.redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+					return process.waitFor();
+				}));
+			}
+			for(Future<Integer> exit : exits) {
+				exit.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package Sulfur;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/*
+ * Runs every .suf file in a directory with the Interpreter, the JVM backend, and the bytecode VM and checks that they all print the same output.
+ * The Interpreter also runs the program without the Optimizer to check that optimizing doesn't change the results.
+ * Errors are compared by their message, so a program that fails has to fail the same way in each engine.
+ * Usage: EngineComparison [directory], which defaults to the example folder.
+ */
+public class EngineComparison {
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "example");
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".suf"));
+		if(files == null) {
+			System.out.println("Error: "+dir+" is not a directory.");
+			System.exit(1);
+		}
+
+		int mismatches = 0;
+		for(File f : files) {
+			String code = Files.readString(f.toPath());
+			String interpreted = run(code, "interpreter", true);
+			String unoptimized = run(code, "interpreter", false);
+			String compiled = run(code, "jvm", true);
+			String vm = run(code, "vm", true);
+
+			if(interpreted.equals(unoptimized) && interpreted.equals(compiled) && interpreted.equals(vm)) {
+				System.out.println("OK       "+f.getName());
+			}
+			else {
+				mismatches++;
+				System.out.println("MISMATCH "+f.getName());
+				System.out.println("--- interpreter ---\n"+interpreted);
+				System.out.println("--- interpreter (unoptimized) ---\n"+unoptimized);
+				System.out.println("--- jvm ---\n"+compiled);
+				System.out.println("--- vm ---\n"+vm);
+			}
+		}
+		System.out.println(mismatches == 0 ? "All engines agree" : mismatches+" file(s) differ");
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	// Runs the program and returns everything it printed
+	private static String run(String code, String engine, boolean optimize) {
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(output));
+		try {
+			Expr.StatementBlock program = new Parser(new Lexer(code).lex()).parse();
+			if(optimize) {
+				program = Optimizer.optimize(program);
+			}
+			new Resolver().resolve(program);
+
+			Termination termination;
+			if(engine.equals("jvm")) {
+				JvmCompiler.CompiledProgram compiled = JvmCompiler.tryCompile(program);
+				if(compiled == null) {
+					return "Could not compile";
+				}
+				termination = compiled.run(OutputSink.standard());
+			}
+			else if(engine.equals("vm")) {
+				termination = new VirtualMachine(BytecodeCompiler.compile(program)).run();
+			}
+			else {
+				termination = new Interpreter(program).run();
+			}
+			if(termination.failed()) {
+				System.out.print("\nError: "+termination.message());
+			}
+		} catch(RuntimeException e) {
+			System.out.print("\nError: "+e.getMessage());
+		} finally {
+			System.out.flush();
+			System.setOut(stdout);
+		}
+		return output.toString();
+	}
+}
@@ -0,0 +1,92 @@
+package Sulfur;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Contention benchmark for the global symbol table.
+ * First times a single threaded loop that reads and writes global variables, once with the table private and once after it has been shared,
+ * so the cost of sharing shows up next to the normal case. Then starts more and more tasks that each update a global counter,
+ * either all the same one or one each, and checks that no update was lost.
+ * Usage: GlobalScopeBenchmark [updates per task]
+ */
+public class GlobalScopeBenchmark {
+
+	public static void main(String[] args) {
+		int updates = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		System.out.println("single thread\tms\tns/update");
+		for(boolean shared : new boolean[] {false, true}) {
+			String code = (shared ? "A noop FV () Y Z\nA t OV X noop()\nt~await()\n" : "")
+					+ "A total NV 0\nA i NV 0\nW i<"+updates+" Y\nA total NV total+i%7\nA i NV i+1\nZ\nP(total)";
+			long best = best(code, expectedTotal(updates));
+			System.out.printf("%s\t%.2f\t%.2f%n", shared ? "shared" : "private", best / 1e6, (double) best / updates);
+		}
+
+		System.out.println();
+		System.out.println("tasks\tcounters\tms\tns/update");
+		for(int tasks = 1; tasks <= 8; tasks *= 2) {
+			for(boolean sameCounter : new boolean[] {true, false}) {
+				long best = best(contention(tasks, updates, sameCounter), (long) tasks * updates);
+				System.out.printf("%d\t%s\t%.2f\t%.2f%n", tasks, sameCounter ? "one" : "one each", best / 1e6, (double) best / ((long) tasks * updates));
+			}
+		}
+	}
+
+	private static long expectedTotal(int updates) {
+		long total = 0;
+		for(int i = 0; i < updates; i++) {
+			total += i % 7;
+		}
+		return total;
+	}
+
+	// Every task adds 1 to its counter updates times, then the counters are added up and printed
+	private static String contention(int tasks, int updates, boolean sameCounter) {
+		StringBuilder code = new StringBuilder();
+		int counters = sameCounter ? 1 : tasks;
+		for(int c = 0; c < counters; c++) {
+			code.append("A count_"+c+" NV 0\n");
+			code.append("A bump_"+c+" FV () Y\nA j NV 0\nW j<"+updates+" Y\nA count_"+c+" NV count_"+c+"+1\nA j NV j+1\nZ\nZ\n");
+		}
+		code.append("A tasks O[]V{}\n");
+		for(int t = 0; t < tasks; t++) {
+			code.append("tasks~add(X bump_"+(sameCounter ? 0 : t)+"())\n");
+		}
+		code.append("A idx NV 0\nW idx<tasks~size() Y\nA task OV tasks~get(idx)\ntask~await()\nA idx NV idx+1\nZ\n");
+		code.append("A total NV 0");
+		for(int c = 0; c < counters; c++) {
+			code.append("+count_"+c);
+		}
+		code.append("\nP(total)");
+		return code.toString();
+	}
+
+	// Runs the program a few times after warming up and returns the fastest time, checking what it printed each time
+	private static long best(String code, long expected) {
+		for(int i = 0; i < 3; i++) {
+			run(code, expected);
+		}
+		long best = Long.MAX_VALUE;
+		for(int i = 0; i < 5; i++) {
+			long start = System.nanoTime();
+			run(code, expected);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	// The program is parsed again every time since the Interpreter caches things in the tree
+	private static void run(String code, long expected) {
+		Expr.StatementBlock program = new Parser(new Lexer(code).lex()).parse();
+		new Resolver().resolve(program);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Termination termination = new Interpreter(program, new OutputSink.StreamSink(output, StandardCharsets.UTF_8)).run();
+		if(termination.failed()) {
+			throw new RuntimeException("The program failed: "+termination.message());
+		}
+		String printed = output.toString(StandardCharsets.UTF_8);
+		if(!printed.equals(String.valueOf(expected))) {
+			throw new RuntimeException("Expected "+expected+" but the program printed "+printed);
+		}
+	}
+}
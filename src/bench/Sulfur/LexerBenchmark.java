@@ -0,0 +1,76 @@
+package Sulfur;
+import java.util.function.Supplier;
+
+/*
+ * Scaling benchmark for the lexer.
+ * Builds generated Sulfur sources of increasing size and times how long it takes to lex each one.
+ * If lexing is linear, the time per character should stay roughly the same as the file grows.
+ * Also shows how much memory the tokens take in the TokenBuffer the Lexer makes,
+ * compared to the same tokens as an ArrayList of Token objects, which is how they used to be stored.
+ */
+public class LexerBenchmark {
+	
+	// Small program that uses every kind of token the lexer has to handle
+	private static final String UNIT = 
+			"M# Generated block\n   with a comment #M\n" +
+			"A num_1 NV 2\nA pi DV 3.14159*2.3\nA big LV (L)123456\nA c CV '\\n'\n" +
+			"A s SV \"some string\\n\"\n" +
+			"W num_1<=100 & c!='x' Y\nI num_1%3=0|U Y P(num_1, s) Z\nA num_1 NV num_1+1\nZ\n";
+	
+	public static void main(String[] args) {
+		int maxCopies = args.length > 0 ? Integer.parseInt(args[0]) : 16000;
+		
+		// Warm up the JIT before measuring
+		String warmup = build(1000);
+		for(int i = 0; i < 20; i++) {
+			new Lexer(warmup).lex();
+		}
+		
+		System.out.println("chars\ttokens\tms\tns/char\tbuffer KB\tlist KB");
+		for(int copies = maxCopies / 16; copies <= maxCopies; copies *= 2) {
+			String code = build(copies);
+			
+			int runs = 5;
+			long best = Long.MAX_VALUE;
+			TokenBuffer tokens = null;
+			for(int i = 0; i < runs; i++) {
+				long start = System.nanoTime();
+				tokens = new Lexer(code).lex();
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			
+			// Both include the identifier and literal values
+			long bufferBytes = retained(() -> new Lexer(code).lex());
+			long listBytes = retained(() -> new Lexer(code).lex().toList());
+			System.out.printf("%d\t%d\t%.2f\t%.2f\t%d\t%d%n", code.length(), tokens.size(), best / 1e6, (double) best / code.length(),
+					bufferBytes / 1024, listBytes / 1024);
+		}
+	}
+	
+	// Heap still in use after making an object and collecting garbage, which is roughly how much memory the object keeps alive
+	private static long retained(Supplier<Object> make) {
+		long before = usedAfterGc();
+		Object kept = make.get();
+		long after = usedAfterGc();
+		if(kept == null) {
+			throw new IllegalStateException();
+		}
+		return after - before;
+	}
+	
+	private static long usedAfterGc() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private static String build(int copies) {
+		StringBuilder code = new StringBuilder(UNIT.length() * copies);
+		for(int i = 0; i < copies; i++) {
+			code.append(UNIT);
+		}
+		return code.toString();
+	}
+}
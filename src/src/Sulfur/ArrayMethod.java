@@ -0,0 +1,26 @@
+package Sulfur;
+import java.util.HashMap;
+
+// Methods that can be called on an array with the property accessor (~)
+// The parser looks up the method by name once, so running a call never has to compare strings
+public enum ArrayMethod {
+	SIZE("size"), LENGTH("length"), GET("get"), SET("set"), CLONE("clone"), INDEXOF("indexof"), CONTAINS("contains"), REMOVE("remove"), ADD("add"), CLEAR("clear");
+
+	final String methodName;
+	private static final HashMap<String, ArrayMethod> nameMap = new HashMap<>();
+
+	private ArrayMethod(String methodName) {
+		this.methodName = methodName;
+	}
+
+	static {
+		for(ArrayMethod m : ArrayMethod.values()) {
+			nameMap.put(m.methodName, m);
+		}
+	}
+
+	// Returns null if there is no array method with that name
+	public static ArrayMethod getArrayMethod(String name) {
+		return nameMap.get(name);
+	}
+}
@@ -0,0 +1,555 @@
+package Sulfur;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Saves parsed programs as .sufc files so running a script that hasn't changed can skip lexing and parsing.
+ * The tree is saved after the Optimizer (when it is used) and before the Resolver, which is cheap and fills in fields the engines change as they run.
+ *
+ * A .sufc file is keyed by a SHA-256 hash of the source, whether it was optimized, and the format of the file, which includes the names of every
+ * TokenType and ArrayMethod since tokens and array methods are saved by their ordinal. A file with a different key is ignored and replaced.
+ *
+ * Layout: "SUFC", the 32 byte key, the strings used in the tree, then the tree.
+ * Every node starts with a tag saying what kind of Expr it is, counts and line numbers are varints, and strings are indexes into the string table.
+ */
+public class AstCache {
+	private static final byte[] MAGIC = {'S', 'U', 'F', 'C'};
+	private static final int FORMAT_VERSION = 2;
+	private static final byte[] FORMAT = format();
+
+	// Tags for each kind of Expr, NULL is for optional parts like an else block
+	private static final int NULL = 0;
+	private static final int STATEMENT_BLOCK = 1;
+	private static final int FUNCTION_CALL = 2;
+	private static final int ARRAY_METHOD_CALL = 3;
+	private static final int EXECUTE = 4;
+	private static final int PRINT = 5;
+	private static final int FUNCTION_DEF = 6;
+	private static final int RETURN = 7;
+	private static final int WHILE = 8;
+	private static final int FLOW_CONTROL = 9;
+	private static final int IF = 10;
+	private static final int BINARY_OP = 11;
+	private static final int UNARY_OP = 12;
+	private static final int LITERAL = 13;
+	private static final int VALUE_ARRAY = 14;
+	private static final int VARIABLE_ACCESS = 15;
+	private static final int ASSIGN = 16;
+	private static final int GROUPING = 17;
+	private static final int AWAIT = 18;
+
+	// Tags for the values held by literals and tokens
+	private static final int NO_VALUE = 0;
+	private static final int INT_VALUE = 1;
+	private static final int LONG_VALUE = 2;
+	private static final int DOUBLE_VALUE = 3;
+	private static final int FLOAT_VALUE = 4;
+	private static final int CHAR_VALUE = 5;
+	private static final int STRING_VALUE = 6;
+	private static final int TRUE_VALUE = 7;
+	private static final int FALSE_VALUE = 8;
+
+	// Hash of everything that decides what a source file parses to
+	public static byte[] key(byte[] source, boolean optimized) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update(FORMAT);
+		digest.update((byte) (optimized ? 1 : 0));
+		return digest.digest(source);
+	}
+
+	// source.sufc next to the source file, or a file named after the key in the cache directory if there is one
+	public static Path cacheFile(Path source, Path cacheDir, byte[] key) {
+		if(cacheDir != null) {
+			StringBuilder name = new StringBuilder();
+			for(byte b : key) {
+				name.append(String.format("%02x", b));
+			}
+			return cacheDir.resolve(name + ".sufc");
+		}
+		String fileName = source.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		return source.resolveSibling((dot > 0 ? fileName.substring(0, dot) : fileName) + ".sufc");
+	}
+
+	// Returns null if there is no cached tree for this key
+	public static Expr.StatementBlock load(Path cacheFile, byte[] key) {
+		byte[] data;
+		try {
+			data = Files.readAllBytes(cacheFile);
+		} catch(IOException e) {
+			return null;
+		}
+		int keyEnd = MAGIC.length + key.length;
+		if(data.length < keyEnd || !Arrays.equals(data, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+				|| !Arrays.equals(data, MAGIC.length, keyEnd, key, 0, key.length)) {
+			return null;
+		}
+		try {
+			return deserialize(Arrays.copyOfRange(data, keyEnd, data.length));
+		} catch(IOException | RuntimeException e) {
+			// A damaged file is treated like a missing one
+			return null;
+		}
+	}
+
+	// Saving is only to make the next run faster, so failing to save isn't an error
+	// The file is written under another name and then moved into place so a script being run twice at once never reads half a file
+	public static void store(Path cacheFile, byte[] key, Expr.StatementBlock program) {
+		Path temp = null;
+		try {
+			byte[] tree = serialize(program);
+			Path dir = cacheFile.toAbsolutePath().getParent();
+			Files.createDirectories(dir);
+			temp = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+			try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+				out.write(MAGIC);
+				out.write(key);
+				out.write(tree);
+			}
+			Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException | RuntimeException e) {
+			if(temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch(IOException e2) {
+					// Nothing else to clean up
+				}
+			}
+		}
+	}
+
+	// The string table and tree, without the header
+	public static byte[] serialize(Expr.StatementBlock program) throws IOException {
+		Writer writer = new Writer();
+		writer.expr(program);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeVarint(out, writer.strings.size());
+		for(String s : writer.strings) {
+			out.writeUTF(s);
+		}
+		writer.tree.writeTo(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	public static Expr.StatementBlock deserialize(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		String[] strings = new String[readVarint(in)];
+		for(int i = 0; i < strings.length; i++) {
+			strings[i] = in.readUTF();
+		}
+		Reader reader = new Reader(in, strings);
+		Expr program = reader.expr();
+		if(!(program instanceof Expr.StatementBlock) || in.read() != -1) {
+			throw new IOException("Not a program");
+		}
+		((Expr.StatementBlock) program).symbols = reader.symbols;
+		return (Expr.StatementBlock) program;
+	}
+
+	private static class Writer {
+		final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(tree);
+		final ArrayList<String> strings = new ArrayList<String>();
+		final HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+		void expr(Expr expr) throws IOException {
+			if(expr == null) {
+				varint(NULL);
+			}
+			else if(expr instanceof Expr.StatementBlock) {
+				varint(STATEMENT_BLOCK);
+				exprs(((Expr.StatementBlock) expr).statements);
+			}
+			else if(expr instanceof Expr.FunctionCall) {
+				varint(FUNCTION_CALL);
+				functionCall((Expr.FunctionCall) expr);
+			}
+			else if(expr instanceof Expr.ArrayMethodCall) {
+				Expr.ArrayMethodCall call = (Expr.ArrayMethodCall) expr;
+				varint(ARRAY_METHOD_CALL);
+				expr(call.array);
+				token(call.methodTok);
+				varint(call.method.ordinal());
+				exprs(call.arguments);
+			}
+			else if(expr instanceof Expr.Await) {
+				varint(AWAIT);
+				expr(((Expr.Await) expr).task);
+				token(((Expr.Await) expr).awaitTok);
+			}
+			else if(expr instanceof Expr.Execute) {
+				varint(EXECUTE);
+				token(((Expr.Execute) expr).execTok);
+				functionCall(((Expr.Execute) expr).call);
+			}
+			else if(expr instanceof Expr.PrintStmt) {
+				varint(PRINT);
+				exprs(((Expr.PrintStmt) expr).arguments);
+				varint(((Expr.PrintStmt) expr).lineNum);
+			}
+			else if(expr instanceof Expr.FunctionDef) {
+				Expr.FunctionDef func = (Expr.FunctionDef) expr;
+				varint(FUNCTION_DEF);
+				token(func.funcIdTok);
+				token(func.returnType);
+				varint(func.parameters.size());
+				for(Expr.Parameter param : func.parameters) {
+					token(param.varType);
+					token(param.varIdTok);
+					varint(param.arrayDegree);
+				}
+				expr(func.funcBlock);
+			}
+			else if(expr instanceof Expr.ReturnStmt) {
+				varint(RETURN);
+				expr(((Expr.ReturnStmt) expr).returnExp);
+				varint(((Expr.ReturnStmt) expr).lineNum);
+			}
+			else if(expr instanceof Expr.WhileStatement) {
+				Expr.WhileStatement loop = (Expr.WhileStatement) expr;
+				varint(WHILE);
+				expr(loop.condition);
+				expr(loop.block);
+				varint(loop.lineNum);
+			}
+			else if(expr instanceof Expr.FlowControlStmt) {
+				varint(FLOW_CONTROL);
+				token(((Expr.FlowControlStmt) expr).ctrlTok);
+			}
+			else if(expr instanceof Expr.IfStatement) {
+				Expr.IfStatement ifStmt = (Expr.IfStatement) expr;
+				varint(IF);
+				varint(ifStmt.conditionalBlocks.size());
+				for(Expr.ConditionalBlock block : ifStmt.conditionalBlocks) {
+					expr(block.condition);
+					expr(block.body);
+					varint(block.lineNum);
+				}
+				expr(ifStmt.elseBlock);
+			}
+			else if(expr instanceof Expr.BinaryOp) {
+				Expr.BinaryOp op = (Expr.BinaryOp) expr;
+				varint(BINARY_OP);
+				expr(op.left);
+				token(op.operator);
+				expr(op.right);
+			}
+			else if(expr instanceof Expr.UnaryOp) {
+				varint(UNARY_OP);
+				token(((Expr.UnaryOp) expr).operator);
+				expr(((Expr.UnaryOp) expr).right);
+			}
+			else if(expr instanceof Expr.Literal) {
+				varint(LITERAL);
+				value(((Expr.Literal) expr).value);
+			}
+			else if(expr instanceof Expr.ValueArray) {
+				varint(VALUE_ARRAY);
+				exprs(((Expr.ValueArray) expr).value);
+			}
+			else if(expr instanceof Expr.VariableAccess) {
+				varint(VARIABLE_ACCESS);
+				token(((Expr.VariableAccess) expr).varIdTok);
+			}
+			else if(expr instanceof Expr.Assign) {
+				Expr.Assign assign = (Expr.Assign) expr;
+				varint(ASSIGN);
+				token(assign.varIdTok);
+				token(assign.dataTypeTok);
+				expr(assign.value);
+				varint(assign.arrayDegree);
+			}
+			else if(expr instanceof Expr.Grouping) {
+				varint(GROUPING);
+				expr(((Expr.Grouping) expr).expression);
+			}
+			else {
+				throw new RuntimeException("Unrecognized expression type: "+expr.getClass().getSimpleName());
+			}
+		}
+
+		void functionCall(Expr.FunctionCall call) throws IOException {
+			token(call.funcIdTok);
+			exprs(call.arguments);
+		}
+
+		void exprs(List<? extends Expr> exprs) throws IOException {
+			varint(exprs.size());
+			for(Expr e : exprs) {
+				expr(e);
+			}
+		}
+
+		// Null tokens are saved as type 0 with the rest left out
+		void token(Token tok) throws IOException {
+			if(tok == null) {
+				varint(0);
+				return;
+			}
+			varint(tok.type.ordinal() + 1);
+			value(tok.value);
+			varint(tok.line);
+		}
+
+		void value(Object value) throws IOException {
+			if(value == null) {
+				varint(NO_VALUE);
+			}
+			else if(value instanceof Integer) {
+				varint(INT_VALUE);
+				out.writeInt((Integer) value);
+			}
+			else if(value instanceof Long) {
+				varint(LONG_VALUE);
+				out.writeLong((Long) value);
+			}
+			else if(value instanceof Double) {
+				varint(DOUBLE_VALUE);
+				out.writeDouble((Double) value);
+			}
+			else if(value instanceof Float) {
+				varint(FLOAT_VALUE);
+				out.writeFloat((Float) value);
+			}
+			else if(value instanceof Character) {
+				varint(CHAR_VALUE);
+				out.writeChar((Character) value);
+			}
+			else if(value instanceof String) {
+				varint(STRING_VALUE);
+				Integer index = stringIndexes.get(value);
+				if(index == null) {
+					index = strings.size();
+					strings.add((String) value);
+					stringIndexes.put((String) value, index);
+				}
+				varint(index);
+			}
+			else if(value instanceof Boolean) {
+				varint((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+			}
+			else {
+				throw new RuntimeException("Cannot save value of type "+value.getClass().getSimpleName());
+			}
+		}
+
+		void varint(int value) throws IOException {
+			writeVarint(out, value);
+		}
+	}
+
+	private static class Reader {
+		private static final TokenType[] TOKEN_TYPES = TokenType.values();
+		private static final ArrayMethod[] ARRAY_METHODS = ArrayMethod.values();
+
+		final DataInputStream in;
+		final String[] strings;
+		// Symbol IDs aren't saved, identifiers get new ones as they are read
+		final Symbols symbols = new Symbols();
+
+		Reader(DataInputStream in, String[] strings) {
+			this.in = in;
+			this.strings = strings;
+		}
+
+		Expr expr() throws IOException {
+			int tag = varint();
+			switch(tag) {
+			case NULL:
+				return null;
+			case STATEMENT_BLOCK:
+				return new Expr.StatementBlock(exprs());
+			case FUNCTION_CALL:
+				return functionCall();
+			case ARRAY_METHOD_CALL: {
+				Expr array = expr();
+				Token methodTok = token();
+				ArrayMethod method = ARRAY_METHODS[varint()];
+				return new Expr.ArrayMethodCall(array, methodTok, method, exprs());
+			}
+			case EXECUTE: {
+				Token execTok = token();
+				return new Expr.Execute(execTok, functionCall());
+			}
+			case AWAIT: {
+				Expr task = expr();
+				return new Expr.Await(task, token());
+			}
+			case PRINT: {
+				ArrayList<Expr> arguments = exprs();
+				return new Expr.PrintStmt(arguments, varint());
+			}
+			case FUNCTION_DEF: {
+				Token funcIdTok = token();
+				Token returnType = token();
+				int numParams = varint();
+				ArrayList<Expr.Parameter> parameters = new ArrayList<Expr.Parameter>(numParams);
+				for(int i = 0; i < numParams; i++) {
+					Token varType = token();
+					Token varIdTok = token();
+					parameters.add(new Expr.Parameter(varType, varIdTok, varint()));
+				}
+				return new Expr.FunctionDef(funcIdTok, returnType, parameters, block());
+			}
+			case RETURN: {
+				Expr returnExp = expr();
+				return new Expr.ReturnStmt(returnExp, varint());
+			}
+			case WHILE: {
+				Expr condition = expr();
+				Expr.StatementBlock block = block();
+				return new Expr.WhileStatement(condition, block, varint());
+			}
+			case FLOW_CONTROL:
+				return new Expr.FlowControlStmt(token());
+			case IF: {
+				int numBlocks = varint();
+				ArrayList<Expr.ConditionalBlock> blocks = new ArrayList<Expr.ConditionalBlock>(numBlocks);
+				for(int i = 0; i < numBlocks; i++) {
+					Expr condition = expr();
+					Expr.StatementBlock body = block();
+					blocks.add(new Expr.ConditionalBlock(condition, body, varint()));
+				}
+				return new Expr.IfStatement(blocks, block());
+			}
+			case BINARY_OP: {
+				Expr left = expr();
+				Token operator = token();
+				return new Expr.BinaryOp(left, operator, expr());
+			}
+			case UNARY_OP: {
+				Token operator = token();
+				return new Expr.UnaryOp(operator, expr());
+			}
+			case LITERAL:
+				return new Expr.Literal(value());
+			case VALUE_ARRAY:
+				return new Expr.ValueArray(exprs());
+			case VARIABLE_ACCESS:
+				return new Expr.VariableAccess(token());
+			case ASSIGN: {
+				Token varIdTok = token();
+				Token dataTypeTok = token();
+				Expr value = expr();
+				return new Expr.Assign(varIdTok, dataTypeTok, value, varint());
+			}
+			case GROUPING:
+				return new Expr.Grouping(expr());
+			default:
+				throw new IOException("Unknown tag "+tag);
+			}
+		}
+
+		Expr.FunctionCall functionCall() throws IOException {
+			Token funcIdTok = token();
+			return new Expr.FunctionCall(funcIdTok, exprs());
+		}
+
+		Expr.StatementBlock block() throws IOException {
+			return (Expr.StatementBlock) expr();
+		}
+
+		ArrayList<Expr> exprs() throws IOException {
+			int size = varint();
+			ArrayList<Expr> exprs = new ArrayList<Expr>(size);
+			for(int i = 0; i < size; i++) {
+				exprs.add(expr());
+			}
+			return exprs;
+		}
+
+		Token token() throws IOException {
+			int type = varint();
+			if(type == 0) {
+				return null;
+			}
+			TokenType tokenType = TOKEN_TYPES[type - 1];
+			Object value = value();
+			int symbol = tokenType == TokenType.IDENTIFIER ? symbols.intern((String) value) : -1;
+			return new Token(tokenType, value, varint(), symbol);
+		}
+
+		Object value() throws IOException {
+			int tag = varint();
+			switch(tag) {
+			case NO_VALUE:
+				return null;
+			case INT_VALUE:
+				return in.readInt();
+			case LONG_VALUE:
+				return in.readLong();
+			case DOUBLE_VALUE:
+				return in.readDouble();
+			case FLOAT_VALUE:
+				return in.readFloat();
+			case CHAR_VALUE:
+				return in.readChar();
+			case STRING_VALUE:
+				return strings[varint()];
+			case TRUE_VALUE:
+				return true;
+			case FALSE_VALUE:
+				return false;
+			default:
+				throw new IOException("Unknown value tag "+tag);
+			}
+		}
+
+		int varint() throws IOException {
+			return readVarint(in);
+		}
+	}
+
+	// 7 bits per byte, lowest bits first, the top bit is set on every byte but the last
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Varint too long");
+	}
+
+	private static byte[] format() {
+		StringBuilder format = new StringBuilder("sufc "+FORMAT_VERSION);
+		for(TokenType type : TokenType.values()) {
+			format.append(' ').append(type.name());
+		}
+		for(ArrayMethod method : ArrayMethod.values()) {
+			format.append(' ').append(method.name());
+		}
+		return format.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,153 @@
+package Sulfur;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Runs every .suf file in a directory at the same time in one JVM, instead of starting a new JVM for each of them.
+ * EX: BatchRunner --threads=8 --output-dir=out example
+ *
+ * Each file is compiled and executed through SulfurScript on a fixed pool of threads.
+ * A script that fails, quits with Q, or goes over its limits only ends that script, and how every script stopped is printed along with how long it took,
+ * followed by how many scripts were run per second overall.
+ *
+ * --threads=<n> runs n scripts at once, the default is one per CPU
+ * --output-dir=<dir> writes what each script prints to dir/<name>.out, otherwise it is thrown away
+ * --max-steps=<n>, --max-iterations=<n>, --max-depth=<n>, and --timeout=<ms> limit every script separately, see Limits
+ */
+public class BatchRunner {
+
+	public static class Result {
+		public final File file;
+		public final Termination termination;
+		public final long nanos;
+
+		Result(File file, Termination termination, long nanos) {
+			this.file = file;
+			this.termination = termination;
+			this.nanos = nanos;
+		}
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path outputDir = null;
+		Limits limits = Limits.NONE;
+		String dirName = null;
+		for(String arg : args) {
+			if(arg.startsWith("--threads=")) {
+				threads = Integer.parseInt(arg.substring("--threads=".length()));
+			}
+			else if(arg.startsWith("--output-dir=")) {
+				outputDir = Paths.get(arg.substring("--output-dir=".length()));
+			}
+			else if(Limits.isOption(arg)) {
+				try {
+					limits = limits.withOption(arg);
+				} catch(RuntimeException e) {
+					System.out.println("Error: Invalid limit "+arg);
+					System.exit(1);
+				}
+			}
+			else if(arg.startsWith("--")) {
+				System.out.println("Error: Unknown option "+arg);
+				System.exit(1);
+			}
+			else {
+				dirName = arg;
+			}
+		}
+
+		File dir = new File(dirName != null ? dirName : "example");
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".suf"));
+		if(files == null) {
+			System.out.println("Error: "+dir+" is not a directory.");
+			System.exit(1);
+		}
+		Arrays.sort(files);
+		if(outputDir != null) {
+			try {
+				Files.createDirectories(outputDir);
+			} catch(IOException e) {
+				System.out.println("Error: Could not create output directory "+outputDir+".");
+				System.exit(1);
+			}
+		}
+
+		long start = System.nanoTime();
+		List<Result> results = runAll(Arrays.asList(files), threads, outputDir, limits);
+		long elapsed = System.nanoTime() - start;
+
+		int failed = 0;
+		for(Result result : results) {
+			if(result.termination.failed()) {
+				failed++;
+			}
+			System.out.printf("%-30s %10.2f ms  %s%n", result.file.getName(), result.nanos / 1e6, result.termination);
+		}
+		System.out.printf("%d scripts (%d failed) in %.2f ms on %d threads, %.1f scripts/s%n",
+				results.size(), failed, elapsed / 1e6, threads, results.size() / (elapsed / 1e9));
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	// Runs the files on a pool of threads and returns how each of them stopped, in the same order as the files
+	public static List<Result> runAll(List<File> files, int threads, Path outputDir, Limits limits) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for(File file : files) {
+				futures.add(pool.submit(() -> run(file, outputDir, limits)));
+			}
+			ArrayList<Result> results = new ArrayList<Result>();
+			for(Future<Result> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while running scripts");
+		} catch(ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Compiles and runs one file, syntax errors and output files that can't be opened are reported the same way as errors in the program
+	public static Result run(File file, Path outputDir, Limits limits) {
+		long start = System.nanoTime();
+		Termination termination;
+		OutputSink out = null;
+		try {
+			SulfurScript script = SulfurScript.compile(Files.readString(file.toPath()));
+			if(outputDir != null) {
+				out = new OutputSink.FileSink(outputDir.resolve(file.getName().replaceAll("\\.suf$", "")+".out"));
+			}
+			else {
+				out = new OutputSink.StreamSink(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+			}
+			termination = script.execute(Map.of(), out, limits);
+		} catch(IOException e) {
+			termination = Termination.error(new RuntimeException("Could not read or write "+e.getMessage()));
+		} catch(RuntimeException e) {
+			termination = Termination.error(e);
+		} finally {
+			if(out != null) {
+				out.close();
+			}
+		}
+		return new Result(file, termination, System.nanoTime() - start);
+	}
+}
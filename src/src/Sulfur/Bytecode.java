@@ -0,0 +1,160 @@
+package Sulfur;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/*
+ * Instruction format used by the BytecodeCompiler and the VirtualMachine.
+ * Each chunk of code is a flat int array where every instruction is an opcode followed by a fixed number of operands.
+ * Operands are register numbers, indexes into the chunk's constant pool, global slots, jump targets, or line numbers for errors.
+ * Registers hold the variables of every symbol table inside a function (or the top level code) plus temporary values.
+ */
+public class Bytecode {
+
+	// Opcodes
+	public static final int LOADK = 0;       // dst, const          regs[dst] = constants[const]
+	public static final int GETL = 1;        // dst, src, name, line   regs[dst] = regs[src], error if undefined
+	public static final int GETG = 2;        // dst, slot, name, line  regs[dst] = globals[slot], error if undefined
+	public static final int SETG = 3;        // slot, src           globals[slot] = regs[src]
+	public static final int UNDEF = 4;       // dst, name, line     variable that is never defined, always an error
+	public static final int CHECKTYPE = 5;   // reg, type, arrayDegree, line   checks a value being assigned to a variable
+	public static final int ADD = 6;         // dst, left, right, line (same for all binary operators)
+	public static final int SUB = 7;
+	public static final int MUL = 8;
+	public static final int DIV = 9;
+	public static final int MOD = 10;
+	public static final int AND = 11;
+	public static final int OR = 12;
+	public static final int EQ = 13;
+	public static final int LT = 14;
+	public static final int GT = 15;
+	public static final int NE = 16;
+	public static final int LE = 17;
+	public static final int GE = 18;
+	public static final int UNARY = 19;      // dst, src, operator, line
+	public static final int NEWARRAY = 20;   // dst, first, count    array of regs[first] to regs[first+count-1]
+	public static final int ARRAYCALL = 21;  // dst, method, first, count, line   array method on regs[first], count arguments follow it
+	public static final int CALL = 22;       // dst, func, first, count, name, line
+	public static final int JUMP = 23;       // target
+	public static final int JUMPF = 24;      // cond, target, line   jumps if the condition is false
+	public static final int PRINT = 25;      // src
+	public static final int RETURN = 26;     // src                 returns from a function if the value isn't null
+	public static final int TOPRETURN = 27;  // src                 return used outside of a function, error if the value isn't null
+	public static final int INVALID = 28;    // type                break or continue used outside of a loop
+	public static final int CLEAR = 29;      // first, count        undefines the variables of a symbol table when it is entered
+	public static final int QUIT = 30;
+	public static final int END = 31;        //                     end of a function or the top level code
+	public static final int TESTSET = 32;    // dst, src, operator, target   if regs[src] decides the result of & or |, regs[dst] = regs[src] and jump
+	public static final int TAILCALL = 33;   // dst, func, first, count, name, line   CALL in a return, restarts the chunk if func is the function being run
+	public static final int EXECUTE = 34;    // dst, func, first, count, name, line   starts the call as a Task, regs[dst] = the task
+	// An assignment to a global whose value reads the variable itself is UPDATEG, the code for the value, ENDUPDATE, then SETG
+	// Once tasks have started, UPDATEG runs the code up to ENDUPDATE while holding the variable's lock and stores regs[src] itself,
+	// then jumps past the SETG so no other task can change the variable in between, before that it does nothing
+	public static final int UPDATEG = 35;    // slot, src, target
+	public static final int ENDUPDATE = 36;  //                     end of the code run by UPDATEG
+	public static final int AWAIT = 37;      // dst, src, line      regs[dst] = what the task in regs[src] returned, once it finishes
+
+	// Names and operand kinds of each opcode, used by the disassembler
+	// r = register, k = constant, g = global slot, t = token type, a = array method, n = count, j = jump target, l = line
+	static final String[] NAMES = {"LOADK", "GETL", "GETG", "SETG", "UNDEF", "CHECKTYPE", "ADD", "SUB", "MUL", "DIV", "MOD", "AND", "OR",
+			"EQ", "LT", "GT", "NE", "LE", "GE", "UNARY", "NEWARRAY", "ARRAYCALL", "CALL", "JUMP", "JUMPF", "PRINT", "RETURN", "TOPRETURN",
+			"INVALID", "CLEAR", "QUIT", "END", "TESTSET", "TAILCALL", "EXECUTE", "UPDATEG",
+			"ENDUPDATE", "AWAIT"};
+	static final String[] OPERANDS = {"rk", "rrkl", "rgkl", "gr", "rkl", "rtnl", "rrrl", "rrrl", "rrrl", "rrrl", "rrrl", "rrrl", "rrrl",
+			"rrrl", "rrrl", "rrrl", "rrrl", "rrrl", "rrrl", "rrtl", "rrn", "rarnl", "rrrnkl", "j", "rjl", "r", "r", "r",
+			"t", "rn", "", "", "rrtj", "rrrnkl", "rrrnkl", "grj", "", "rrl"};
+
+	// Token types are stored as their ordinal
+	static final TokenType[] TYPES = TokenType.values();
+	// Array methods are stored as their ordinal too
+	static final ArrayMethod[] ARRAY_METHODS = ArrayMethod.values();
+
+	// Compiled code for a function or the top level code
+	public static class Chunk {
+		final String name;
+		final Expr.FunctionDef func;
+		final int[] code;
+		final Object[] constants;
+		final int numRegs;
+
+		Chunk(String name, Expr.FunctionDef func, int[] code, Object[] constants, int numRegs) {
+			this.name = name;
+			this.func = func;
+			this.code = code;
+			this.constants = constants;
+			this.numRegs = numRegs;
+		}
+	}
+
+	// Everything the VirtualMachine needs to run a program
+	public static class Program {
+		final Chunk main;
+		final IdentityHashMap<Expr.FunctionDef, Chunk> functions;
+		final ArrayList<Chunk> chunks;
+		final int numGlobals;
+
+		Program(Chunk main, IdentityHashMap<Expr.FunctionDef, Chunk> functions, ArrayList<Chunk> chunks, int numGlobals) {
+			this.main = main;
+			this.functions = functions;
+			this.chunks = chunks;
+			this.numGlobals = numGlobals;
+		}
+	}
+
+	// Returns a readable listing of every chunk in the program
+	public static String disassemble(Program program) {
+		StringBuilder s = new StringBuilder();
+		s.append("globals: "+program.numGlobals+"\n");
+		for(Chunk chunk : program.chunks) {
+			s.append(disassemble(chunk));
+		}
+		return s.toString();
+	}
+
+	public static String disassemble(Chunk chunk) {
+		StringBuilder s = new StringBuilder();
+		s.append("\n== "+chunk.name+" ("+chunk.numRegs+" registers, "+chunk.constants.length+" constants) ==\n");
+
+		int pc = 0;
+		while(pc < chunk.code.length) {
+			int op = chunk.code[pc];
+			String kinds = OPERANDS[op];
+			s.append(String.format("%04d  %-10s", pc, NAMES[op]));
+
+			for(int i = 0; i < kinds.length(); i++) {
+				int operand = chunk.code[pc + 1 + i];
+				if(i > 0) s.append(", ");
+				switch(kinds.charAt(i)) {
+				case 'r':
+					s.append("r"+operand);
+					break;
+				case 'k':
+					Object constant = chunk.constants[operand];
+					String desc = constant instanceof String ? "\""+constant+"\"" : constant instanceof Expr.FunctionDef ? "<function "+((Expr.FunctionDef) constant).funcIdTok.value+">" : String.valueOf(constant);
+					s.append("k"+operand+"("+desc.replace("\n", "\\n")+")");
+					break;
+				case 'g':
+					s.append("g"+operand);
+					break;
+				case 't':
+					s.append(TYPES[operand]);
+					break;
+				case 'a':
+					s.append(ARRAY_METHODS[operand]);
+					break;
+				case 'j':
+					s.append(String.format("-> %04d", operand));
+					break;
+				case 'l':
+					s.append("line "+operand);
+					break;
+				default:
+					s.append(operand);
+					break;
+				}
+			}
+			s.append('\n');
+			pc += 1 + kinds.length();
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,472 @@
+package Sulfur;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+ * Lowers a resolved expression tree into register based bytecode for the VirtualMachine.
+ * Each function definition becomes its own chunk and the top level code becomes the main chunk.
+ *
+ * The variables of every symbol table inside a chunk are flattened into one register file.
+ * Each while and if statement gets a range of registers which is cleared when the statement starts,
+ * which gives the same results as creating a new symbol table. Registers above the variables are used for temporary values.
+ * Global variables are kept in a separate array shared by every chunk.
+ */
+public class BytecodeCompiler {
+
+	private static final HashMap<TokenType, Integer> binaryOpcodes = new HashMap<>();
+	static {
+		binaryOpcodes.put(TokenType.ADD, Bytecode.ADD);
+		binaryOpcodes.put(TokenType.SUB, Bytecode.SUB);
+		binaryOpcodes.put(TokenType.MULTIPLY, Bytecode.MUL);
+		binaryOpcodes.put(TokenType.DIVIDE, Bytecode.DIV);
+		binaryOpcodes.put(TokenType.MODULUS, Bytecode.MOD);
+		binaryOpcodes.put(TokenType.AND, Bytecode.AND);
+		binaryOpcodes.put(TokenType.OR, Bytecode.OR);
+		binaryOpcodes.put(TokenType.EQUALITY, Bytecode.EQ);
+		binaryOpcodes.put(TokenType.LESS_THAN, Bytecode.LT);
+		binaryOpcodes.put(TokenType.GREATER_THAN, Bytecode.GT);
+		binaryOpcodes.put(TokenType.NOT_EQ, Bytecode.NE);
+		binaryOpcodes.put(TokenType.LT_EQ, Bytecode.LE);
+		binaryOpcodes.put(TokenType.GT_EQ, Bytecode.GE);
+	}
+
+	// Compile time view of the symbol table chain, a base register of -1 means the global table
+	private static class CodeScope {
+		final int base;
+		final CodeScope parent;
+
+		CodeScope(int base, CodeScope parent) {
+			this.base = base;
+			this.parent = parent;
+		}
+	}
+
+	// Jumps for break and continue statements that need to be filled in once the end of the loop is known
+	private static class LoopInfo {
+		final int start;
+		final ArrayList<Integer> breakJumps = new ArrayList<Integer>();
+
+		LoopInfo(int start) {
+			this.start = start;
+		}
+	}
+
+	// State for the chunk currently being compiled
+	private final Expr.FunctionDef func;
+	private int[] code = new int[64];
+	private int codeLength = 0;
+	private final ArrayList<Object> constants = new ArrayList<Object>();
+	private final IdentityHashMap<Object, Integer> constantIndexes = new IdentityHashMap<Object, Integer>();
+	private final HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+	private final ArrayList<LoopInfo> loops = new ArrayList<LoopInfo>();
+	private int nextReg = 0;
+	private int maxReg = 0;
+
+	private BytecodeCompiler(Expr.FunctionDef func) {
+		this.func = func;
+	}
+
+	// Compiles the whole program, which must have already been run through the Resolver
+	// Throws an UnsupportedOperationException if the program uses something the VM can't run
+	public static Bytecode.Program compile(Expr.StatementBlock program) {
+		ArrayList<Expr.FunctionDef> funcDefs = Resolver.findFunctions(program);
+
+		ArrayList<Bytecode.Chunk> chunks = new ArrayList<Bytecode.Chunk>();
+		IdentityHashMap<Expr.FunctionDef, Bytecode.Chunk> functions = new IdentityHashMap<Expr.FunctionDef, Bytecode.Chunk>();
+
+		BytecodeCompiler mainCompiler = new BytecodeCompiler(null);
+		mainCompiler.statementBlock(program, new CodeScope(-1, null));
+		Bytecode.Chunk main = mainCompiler.finish("<main>");
+		chunks.add(main);
+
+		for(Expr.FunctionDef funcDef : funcDefs) {
+			BytecodeCompiler funcCompiler = new BytecodeCompiler(funcDef);
+			// Parameters are put in their slots by the VM before the function starts
+			CodeScope funcScope = new CodeScope(funcCompiler.allocRegs(funcDef.numSlots), new CodeScope(-1, null));
+			funcCompiler.statementBlock(funcDef.funcBlock, funcScope);
+			Bytecode.Chunk chunk = funcCompiler.finish(funcDef.funcIdTok.value+" (line "+funcDef.funcIdTok.line+")");
+			chunks.add(chunk);
+			functions.put(funcDef, chunk);
+		}
+		return new Bytecode.Program(main, functions, chunks, program.numSlots);
+	}
+
+	private Bytecode.Chunk finish(String name) {
+		emit(Bytecode.END);
+		return new Bytecode.Chunk(name, func, Arrays.copyOf(code, codeLength), constants.toArray(), maxReg);
+	}
+
+	//////////////////// STATEMENTS ////////////////////
+
+	private void statementBlock(Expr.StatementBlock block, CodeScope scope) {
+		for(Expr e : block.statements) {
+			statement(e, scope);
+		}
+	}
+
+	private void statement(Expr expr, CodeScope scope) {
+		if(expr instanceof Expr.Assign) {
+			Expr.Assign assign = (Expr.Assign) expr;
+			int line = assign.varIdTok.line;
+			ValueWriter value = reg -> {
+				expression(assign.value, reg, scope);
+				emit(Bytecode.CHECKTYPE, reg, assign.dataTypeTok.type.ordinal(), assign.arrayDegree, line);
+			};
+			if(assign.isUpdate && scopeAt(assign.depth, scope).base < 0) {
+				updateGlobal(assign.slot, value);
+			}
+			else {
+				storeVariable(assign.depth, assign.slot, scope, value);
+			}
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			Expr.FunctionDef funcDef = (Expr.FunctionDef) expr;
+			storeVariable(funcDef.depth, funcDef.slot, scope, reg -> emit(Bytecode.LOADK, reg, constant(funcDef)));
+		}
+		else if(Interpreter.isCall(expr)) {
+			// Function calls used as statements ignore their return value
+			int temp = allocRegs(1);
+			expression(expr, temp, scope);
+			freeRegs(temp);
+		}
+		else if(expr instanceof Expr.PrintStmt) {
+			int temp = allocRegs(1);
+			for(Expr e : ((Expr.PrintStmt) expr).arguments) {
+				expression(e, temp, scope);
+				emit(Bytecode.PRINT, temp);
+			}
+			freeRegs(temp);
+		}
+		else if(expr instanceof Expr.ReturnStmt) {
+			Expr.ReturnStmt ret = (Expr.ReturnStmt) expr;
+			int temp = allocRegs(1);
+			if(ret.isTailCall) {
+				functionCall((Expr.FunctionCall) ret.returnExp, temp, scope, Bytecode.TAILCALL);
+			}
+			else {
+				expression(ret.returnExp, temp, scope);
+			}
+			emit(func != null ? Bytecode.RETURN : Bytecode.TOPRETURN, temp);
+			freeRegs(temp);
+		}
+		else if(expr instanceof Expr.WhileStatement) {
+			whileStmt((Expr.WhileStatement) expr, scope);
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			ifStmt((Expr.IfStatement) expr, scope);
+		}
+		else if(expr instanceof Expr.FlowControlStmt) {
+			flowControlStmt((Expr.FlowControlStmt) expr);
+		}
+		else {
+			throw new UnsupportedOperationException("Unsupported statement type "+expr.getClass().getSimpleName());
+		}
+	}
+
+	private void whileStmt(Expr.WhileStatement expr, CodeScope scope) {
+		CodeScope loopScope = expr.hasScope ? enterScope(expr.numSlots, scope) : scope;
+		LoopInfo loop = new LoopInfo(codeLength);
+
+		int cond = allocRegs(1);
+		expression(expr.condition, cond, loopScope);
+		int exitJump = emitJump(Bytecode.JUMPF, cond, expr.lineNum);
+		freeRegs(cond);
+
+		loops.add(loop);
+		statementBlock(expr.block, loopScope);
+		loops.remove(loops.size() - 1);
+		emit(Bytecode.JUMP, loop.start);
+
+		patchJump(exitJump);
+		for(int jump : loop.breakJumps) {
+			patchJump(jump);
+		}
+		if(expr.hasScope) {
+			freeRegs(loopScope.base);
+		}
+	}
+
+	// The conditions and their blocks share one set of registers, the else block uses the enclosing scope
+	private void ifStmt(Expr.IfStatement expr, CodeScope scope) {
+		CodeScope ifScope = expr.hasScope ? enterScope(expr.numSlots, scope) : scope;
+		ArrayList<Integer> endJumps = new ArrayList<Integer>();
+
+		for(Expr.ConditionalBlock ifBlock : expr.conditionalBlocks) {
+			int cond = allocRegs(1);
+			expression(ifBlock.condition, cond, ifScope);
+			int nextJump = emitJump(Bytecode.JUMPF, cond, ifBlock.lineNum);
+			freeRegs(cond);
+
+			statementBlock(ifBlock.body, ifScope);
+			endJumps.add(emitJump(Bytecode.JUMP));
+			patchJump(nextJump);
+		}
+		if(expr.elseBlock != null) {
+			statementBlock(expr.elseBlock, scope);
+		}
+
+		for(int jump : endJumps) {
+			patchJump(jump);
+		}
+		if(expr.hasScope) {
+			freeRegs(ifScope.base);
+		}
+	}
+
+	// Break and continue outside of a loop are errors, just like in the Interpreter
+	private void flowControlStmt(Expr.FlowControlStmt expr) {
+		TokenType type = expr.ctrlTok.type;
+		if(type == TokenType.QUIT) {
+			emit(Bytecode.QUIT);
+		}
+		else if(loops.isEmpty()) {
+			emit(Bytecode.INVALID, type.ordinal());
+		}
+		else if(type == TokenType.JUMP_OUT) {
+			loops.get(loops.size() - 1).breakJumps.add(emitJump(Bytecode.JUMP));
+		}
+		else {
+			emit(Bytecode.JUMP, loops.get(loops.size() - 1).start);
+		}
+	}
+
+	// Starts a new symbol table by giving it a range of registers and clearing them
+	private CodeScope enterScope(int numSlots, CodeScope parent) {
+		int base = allocRegs(numSlots);
+		if(numSlots > 0) {
+			emit(Bytecode.CLEAR, base, numSlots);
+		}
+		return new CodeScope(base, parent);
+	}
+
+	//////////////////// EXPRESSIONS ////////////////////
+
+	// Functional interface for code that computes a value into a register
+	private interface ValueWriter {
+		void write(int reg);
+	}
+
+	// Local variables are written directly, global variables go through a temporary register first
+	private void storeVariable(int depth, int slot, CodeScope scope, ValueWriter value) {
+		CodeScope s = scopeAt(depth, scope);
+		if(s.base >= 0) {
+			value.write(s.base + slot);
+		}
+		else {
+			int temp = allocRegs(1);
+			value.write(temp);
+			emit(Bytecode.SETG, slot, temp);
+			freeRegs(temp);
+		}
+	}
+
+	// A global whose new value reads the variable itself has to be updated atomically once tasks can change it too
+	// UPDATEG runs the value's code under the variable's lock in that case, otherwise the code falls through to a normal SETG
+	private void updateGlobal(int slot, ValueWriter value) {
+		int temp = allocRegs(1);
+		int endJump = emitJump(Bytecode.UPDATEG, slot, temp);
+		value.write(temp);
+		emit(Bytecode.ENDUPDATE);
+		emit(Bytecode.SETG, slot, temp);
+		patchJump(endJump);
+		freeRegs(temp);
+	}
+
+	// Compiles an expression so its result ends up in the dst register
+	// Sub-expressions always go into new temporary registers so dst is only written by the final instruction
+	private void expression(Expr expr, int dst, CodeScope scope) {
+		if(expr instanceof Expr.Literal) {
+			emit(Bytecode.LOADK, dst, constant(((Expr.Literal) expr).value));
+		}
+		else if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			loadVariable(access.depth, access.slot, access.varIdTok, dst, scope);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			expression(((Expr.Grouping) expr).expression, dst, scope);
+		}
+		else if(expr instanceof Expr.BinaryOp && Interpreter.isLogical(((Expr.BinaryOp) expr).operator.type)) {
+			// The right operand is skipped if the left one already decides the result
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			int left = allocRegs(1);
+			expression(binOp.left, left, scope);
+			int skipJump = emitJump(Bytecode.TESTSET, dst, left, binOp.operator.type.ordinal());
+			int right = allocRegs(1);
+			expression(binOp.right, right, scope);
+			emit(binaryOpcodes.get(binOp.operator.type), dst, left, right, binOp.operator.line);
+			patchJump(skipJump);
+			freeRegs(left);
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			Integer opcode = binaryOpcodes.get(binOp.operator.type);
+			if(opcode == null) {
+				throw new UnsupportedOperationException("Unknown operator type "+binOp.operator.type);
+			}
+			int left = allocRegs(1);
+			expression(binOp.left, left, scope);
+			int right = allocRegs(1);
+			expression(binOp.right, right, scope);
+			emit(opcode, dst, left, right, binOp.operator.line);
+			freeRegs(left);
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			int operand = allocRegs(1);
+			expression(unOp.right, operand, scope);
+			emit(Bytecode.UNARY, dst, operand, unOp.operator.type.ordinal(), unOp.operator.line);
+			freeRegs(operand);
+		}
+		else if(expr instanceof Expr.ValueArray) {
+			List<Expr> values = ((Expr.ValueArray) expr).value;
+			int first = expressionList(values, scope);
+			emit(Bytecode.NEWARRAY, dst, first, values.size());
+			freeRegs(first);
+		}
+		else if(expr instanceof Expr.FunctionCall) {
+			functionCall((Expr.FunctionCall) expr, dst, scope);
+		}
+		else if(expr instanceof Expr.Execute) {
+			functionCall(((Expr.Execute) expr).call, dst, scope, Bytecode.EXECUTE);
+		}
+		else if(expr instanceof Expr.Await) {
+			Expr.Await await = (Expr.Await) expr;
+			int task = allocRegs(1);
+			expression(await.task, task, scope);
+			emit(Bytecode.AWAIT, dst, task, await.awaitTok.line);
+			freeRegs(task);
+		}
+		else if(expr instanceof Expr.ArrayMethodCall) {
+			Expr.ArrayMethodCall call = (Expr.ArrayMethodCall) expr;
+			int first = allocRegs(1);
+			expression(call.array, first, scope);
+			expressionList(call.arguments, scope);
+			emit(Bytecode.ARRAYCALL, dst, call.method.ordinal(), first, call.arguments.size(), call.methodTok.line);
+			freeRegs(first);
+		}
+		else {
+			throw new UnsupportedOperationException("Unsupported expression type "+expr.getClass().getSimpleName());
+		}
+	}
+
+	private void functionCall(Expr.FunctionCall expr, int dst, CodeScope scope) {
+		functionCall(expr, dst, scope, Bytecode.CALL);
+	}
+
+	// callOpcode is TAILCALL for calls that are returned right away and EXECUTE for calls started as a Task
+	private void functionCall(Expr.FunctionCall expr, int dst, CodeScope scope, int callOpcode) {
+		String funcName = expr.funcIdTok.value.toString();
+		int line = expr.funcIdTok.line;
+
+		// The function is found before its arguments are evaluated
+		int funcReg = allocRegs(1);
+		loadVariable(expr.depth, expr.slot, expr.funcIdTok, funcReg, scope);
+		int first = expressionList(expr.arguments, scope);
+		emit(callOpcode, dst, funcReg, first, expr.arguments.size(), constant(funcName), line);
+		freeRegs(funcReg);
+	}
+
+	// Evaluates each expression into consecutive registers and returns the first one
+	private int expressionList(List<Expr> exprs, CodeScope scope) {
+		int first = nextReg;
+		for(Expr e : exprs) {
+			expression(e, allocRegs(1), scope);
+		}
+		return first;
+	}
+
+	private void loadVariable(int depth, int slot, Token varTok, int dst, CodeScope scope) {
+		int name = constant(varTok.value.toString());
+		if(depth < 0) {
+			emit(Bytecode.UNDEF, dst, name, varTok.line);
+			return;
+		}
+		CodeScope s = scopeAt(depth, scope);
+		if(s.base >= 0) {
+			emit(Bytecode.GETL, dst, s.base + slot, name, varTok.line);
+		}
+		else {
+			emit(Bytecode.GETG, dst, slot, name, varTok.line);
+		}
+	}
+
+	private CodeScope scopeAt(int depth, CodeScope scope) {
+		CodeScope s = scope;
+		for(int i = 0; i < depth; i++) {
+			s = s.parent;
+		}
+		return s;
+	}
+
+	//////////////////// HELPERS ////////////////////
+
+	private int allocRegs(int count) {
+		int first = nextReg;
+		nextReg += count;
+		maxReg = Math.max(maxReg, nextReg);
+		return first;
+	}
+
+	// Frees every register from first upwards
+	private void freeRegs(int first) {
+		nextReg = first;
+	}
+
+	private int constant(Object value) {
+		// Strings are compared by value so variable names are only stored once
+		if(value instanceof String) {
+			Integer idx = stringIndexes.get(value);
+			if(idx == null) {
+				idx = constants.size();
+				constants.add(value);
+				stringIndexes.put((String) value, idx);
+			}
+			return idx;
+		}
+		Integer idx = constantIndexes.get(value);
+		if(idx == null) {
+			idx = constants.size();
+			constants.add(value);
+			constantIndexes.put(value, idx);
+		}
+		return idx;
+	}
+
+	private void emit(int... words) {
+		if(codeLength + words.length > code.length) {
+			code = Arrays.copyOf(code, Math.max(code.length * 2, codeLength + words.length));
+		}
+		for(int w : words) {
+			code[codeLength++] = w;
+		}
+	}
+
+	// Emits a jump whose target is filled in later by patchJump, the target is always the last operand
+	private int emitJump(int opcode, int... operands) {
+		emit(opcode);
+		int targetIdx = -1;
+		if(opcode == Bytecode.JUMPF) {
+			emit(operands[0]);
+			targetIdx = codeLength;
+			emit(-1, operands[1]);
+		}
+		else if(opcode == Bytecode.TESTSET || opcode == Bytecode.UPDATEG) {
+			emit(operands);
+			targetIdx = codeLength;
+			emit(-1);
+		}
+		else {
+			targetIdx = codeLength;
+			emit(-1);
+		}
+		return targetIdx;
+	}
+
+	// Points a jump at the current end of the code
+	private void patchJump(int targetIdx) {
+		code[targetIdx] = codeLength;
+	}
+}
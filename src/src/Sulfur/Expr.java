@@ -6,6 +6,10 @@ public abstract class Expr {
 	
 	public static class StatementBlock extends Expr {
 		final List<Expr> statements;
+		// Set by the Resolver, only used for the root block of the program which holds the global variables
+		int numSlots = 0;
+		// Only set on the root block, the IDs of the identifiers in the program's tokens
+		Symbols symbols = null;
 		
 		StatementBlock(List<Expr> statements) {
 			this.statements = statements;
@@ -25,6 +29,11 @@ public abstract class Expr {
 	public static class FunctionCall extends Expr {
 		final Token funcIdTok;
 		final List<Expr> arguments;
+		// Set by the Resolver, location of the function in the symbol tables
+		int depth = -1;
+		int slot = -1;
+		// Set by the Interpreter, the function this call found last time and the state of the symbol table it was found in
+		Interpreter.CallSiteCache cache = null;
 		
 		FunctionCall(Token funcIdTok, List<Expr> arguments) {
 			this.funcIdTok = funcIdTok;
@@ -44,11 +53,70 @@ public abstract class Expr {
 		}
 	}
 	
+	// arr~method(args), the array is kept separate from the method's arguments
+	public static class ArrayMethodCall extends Expr {
+		final Expr array;
+		final Token methodTok;
+		final ArrayMethod method;
+		final List<Expr> arguments;
+		
+		ArrayMethodCall(Expr array, Token methodTok, ArrayMethod method, List<Expr> arguments) {
+			this.array = array;
+			this.methodTok = methodTok;
+			this.method = method;
+			this.arguments = arguments;
+		}
+		@Override
+		public String toString() {
+			String s = "CALL ARRAY METHOD "+method+" ON "+array+" WITH ARGS (";
+			
+			boolean first = true;
+			for(Expr e : arguments) {
+				if(!first) s += ", ";
+				s += e;
+				first = false;
+			}
+			return s + ')';
+		}
+	}
+	
+	// X f(args), runs the call as a Task and results in the task
+	// t~await(), the only method called with ~ that isn't an array method
+	public static class Await extends Expr {
+		final Expr task;
+		final Token awaitTok;
+		
+		Await(Expr task, Token awaitTok) {
+			this.task = task;
+			this.awaitTok = awaitTok;
+		}
+		@Override
+		public String toString() {
+			return "AWAIT "+task;
+		}
+	}
+	
+	public static class Execute extends Expr {
+		final Token execTok;
+		final FunctionCall call;
+		
+		Execute(Token execTok, FunctionCall call) {
+			this.execTok = execTok;
+			this.call = call;
+		}
+		@Override
+		public String toString() {
+			return "EXECUTE ("+call+")";
+		}
+	}
+	
 	public static class PrintStmt extends Expr {
 		final List<Expr> arguments;
+		final int lineNum;
 		
-		PrintStmt(List<Expr> arguments) {
+		PrintStmt(List<Expr> arguments, int lineNum) {
 			this.arguments = arguments;
+			this.lineNum = lineNum;
 		}
 		
 		@Override
@@ -70,6 +138,12 @@ public abstract class Expr {
 		final Token returnType;
 		final List<Parameter> parameters;
 		final StatementBlock funcBlock;
+		// Set by the Resolver, location the function is stored at and the size of its symbol table
+		int depth = -1;
+		int slot = -1;
+		int numSlots = 0;
+		// Set by the Resolver, whether any return in the body is a tail call
+		boolean hasTailCalls = false;
 		
 		FunctionDef(Token funcIdTok, Token returnType, List<Parameter> parameters, StatementBlock funcBlock) {
 			this.funcIdTok = funcIdTok;
@@ -95,9 +169,15 @@ public abstract class Expr {
 	
 	public static class ReturnStmt extends Expr {
 		final Expr returnExp;
+		final int lineNum;
+		// Set by the Resolver, the function this return is in (null for the top level code)
+		// and whether it returns the result of calling a function, which might be a call to that same function
+		FunctionDef function = null;
+		boolean isTailCall = false;
 		
-		ReturnStmt(Expr returnExp) {
+		ReturnStmt(Expr returnExp, int lineNum) {
 			this.returnExp = returnExp;
+			this.lineNum = lineNum;
 		}
 		@Override
 		public String toString() {
@@ -109,6 +189,10 @@ public abstract class Expr {
 		final Expr condition;
 		final StatementBlock block;
 		final int lineNum;
+		// Set by the Resolver, size of the loop's symbol table
+		// A loop that doesn't define any variables of its own doesn't get one and uses the enclosing table
+		boolean hasScope = true;
+		int numSlots = 0;
 		
 		WhileStatement(Expr condition, StatementBlock block, int lineNum) {
 			this.condition = condition;
@@ -152,6 +236,10 @@ public abstract class Expr {
 	public static class IfStatement extends Expr {
 		final ArrayList<ConditionalBlock> conditionalBlocks;
 		final StatementBlock elseBlock;
+		// Set by the Resolver, size of the symbol table shared by the conditions and their blocks
+		// Like loops, an if statement only gets a table if one of its blocks defines a variable
+		boolean hasScope = true;
+		int numSlots = 0;
 		
 		IfStatement(ArrayList<ConditionalBlock> conditionalBlocks, StatementBlock elseBlock) {
 			this.conditionalBlocks = conditionalBlocks;
@@ -176,6 +264,8 @@ public abstract class Expr {
 		final Expr left;
 		final Token operator;
 		final Expr right;
+		// Set by the Specializer, the operand types this operation has been specialized for
+		int state = Specializer.UNINITIALIZED;
 
 		BinaryOp(Expr left, Token operator, Expr right) {
 			this.left = left;
@@ -193,6 +283,8 @@ public abstract class Expr {
 	static class UnaryOp extends Expr {
 		final Token operator;
 		final Expr right;
+		// Set by the Specializer, the operand type this operation has been specialized for
+		int state = Specializer.UNINITIALIZED;
 
 		UnaryOp(Token operator, Expr right) {
 			this.operator = operator;
@@ -227,6 +319,9 @@ public abstract class Expr {
 	
 	public static class VariableAccess extends Expr {
 		final Token varIdTok;
+		// Set by the Resolver, how many symbol tables up the variable is and where it is in that table
+		int depth = -1;
+		int slot = -1;
 	    
 		VariableAccess(Token varIdTok) {
 	      this.varIdTok = varIdTok;
@@ -243,6 +338,8 @@ public abstract class Expr {
 		final Token varType;
 		final Token varIdTok;
 		final int arrayDegree;
+		// Set by the Resolver, location in the function's symbol table
+		int slot = -1;
 		
 		Parameter(Token varType, Token varIdTok, int arrayDegree) {
 	      this.varIdTok = varIdTok;
@@ -260,6 +357,13 @@ public abstract class Expr {
 		final Token dataTypeTok;
 		final Expr value;
 		final int arrayDegree;
+		// Set by the Resolver, how many symbol tables up the variable is and where it is in that table
+		int depth = -1;
+		int slot = -1;
+		// Set by the Interpreter to Specializer.GENERIC once a value of the wrong primitive type is assigned, so it stops trying to store it unboxed
+		int state = Specializer.UNINITIALIZED;
+		// Set by the Resolver, whether the value reads the variable being assigned without calling anything
+		boolean isUpdate = false;
 		
 	    Assign(Token varIdTok, Token dataTypeTok, Expr value, int arrayDegree) {
 	      this.varIdTok = varIdTok;
@@ -1,23 +1,81 @@
 package Sulfur;
-
-import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Interpreter {
 	Expr rootExpr;
 	SymbolTable globalSymTable;
+	// Where P() prints to
+	private OutputSink out;
+	// Null unless the program is being profiled
+	private final Profiler profiler;
+	private Limits limits;
+	// What's left of the limits during a run, null when there are none so the checks cost a null check
+	private Limits.Budget budget;
+	// Symbol tables for function calls, the thread that called run() uses mainFrames and every task thread has its own
+	private final Frames mainFrames = new Frames();
+	private final ThreadLocal<Frames> taskFrames = ThreadLocal.withInitial(Frames::new);
+	private Thread mainThread;
+	
+	// The expression must have already been run through the Resolver
+	public Interpreter(Expr.StatementBlock exp) {
+		this(exp, OutputSink.standard());
+	}
+	
+	public Interpreter(Expr.StatementBlock exp, OutputSink out) {
+		this(exp, out, null);
+	}
+	
+	public Interpreter(Expr.StatementBlock exp, OutputSink out, Profiler profiler) {
+		this(exp, out, profiler, Limits.NONE);
+	}
 	
-	public Interpreter(Expr exp) {
+	public Interpreter(Expr.StatementBlock exp, OutputSink out, Profiler profiler, Limits limits) {
 		this.rootExpr = exp;
-		this.globalSymTable = new SymbolTable(null);
+		this.globalSymTable = new SymbolTable(null, exp.numSlots);
+		this.out = out;
+		this.profiler = profiler;
+		this.limits = limits;
+	}
+	
+	// Undefines every global variable so the program can be run again from the start, printing to out and with new limits this time
+	// The global table can't be reused if the last run started a Task, since the task could still be using it
+	void reset(OutputSink out, Limits limits) {
+		globalSymTable.clear();
+		this.out = out;
+		this.limits = limits;
+	}
+	
+	boolean canReset() {
+		return !globalSymTable.isShared();
+	}
+	
+	// Sets a global variable before the program runs
+	void setGlobal(int slot, Object value) {
+		globalSymTable.setValue(0, slot, value);
 	}
 	
 	public static void error(String msg, int lineNum) throws RuntimeException {
 		throw new RuntimeException("[Line "+lineNum+"]: "+msg);
 	}
 	
-	public void run() {
-		Object res = evaluate(rootExpr, globalSymTable);
-		checkForInvalidUsage(res, false);
+	public Termination run() {
+		budget = limits.isUnlimited() ? null : new Limits.Budget(limits);
+		mainThread = Thread.currentThread();
+		if(profiler != null) {
+			profiler.start();
+		}
+		try {
+			return Termination.run(() -> {
+				Object res = evaluate(rootExpr, globalSymTable);
+				checkForInvalidUsage(res, false);
+			});
+		} finally {
+			// Output printed before an error still shows up
+			out.flush();
+			if(profiler != null) {
+				profiler.stop();
+			}
+		}
 	}
 	
 	// Figures out what type of expression it is using an inefficient chain of if/elif statements
@@ -31,6 +89,15 @@ public class Interpreter {
 		else if(expr instanceof Expr.FunctionCall) {
 			return evaluate_FunctionCall((Expr.FunctionCall) expr, symTable);
 		}
+		else if(expr instanceof Expr.ArrayMethodCall) {
+			return evaluate_ArrayMethodCall((Expr.ArrayMethodCall) expr, symTable);
+		}
+		else if(expr instanceof Expr.Execute) {
+			return evaluate_Execute((Expr.Execute) expr, symTable);
+		}
+		else if(expr instanceof Expr.Await) {
+			return await(evaluate(((Expr.Await) expr).task, symTable), ((Expr.Await) expr).awaitTok.line);
+		}
 		else if(expr instanceof Expr.PrintStmt) {
 			return evaluate_PrintStmt((Expr.PrintStmt) expr, symTable);
 		}
@@ -83,135 +150,331 @@ public class Interpreter {
 	
 	private Object evaluate_StatementBlock(Expr.StatementBlock expr, SymbolTable symTable) {
 		for(Expr e : expr.statements) {
+			if(profiler != null) {
+				profiler.statement(e);
+			}
 			Object retVal = evaluate(e, symTable);
-			if(!(e instanceof Expr.FunctionCall) && retVal != null) {
+			if(!isCall(e) && retVal != null) {
 				return retVal;
 			}
 		}
 		return null;
 	}
 	
+	// Calls used as statements ignore their result
+	public static boolean isCall(Expr statement) {
+		return statement instanceof Expr.FunctionCall || statement instanceof Expr.ArrayMethodCall || statement instanceof Expr.Execute
+				|| statement instanceof Expr.Await;
+	}
+	
 	private Object evaluate_FunctionCall(Expr.FunctionCall expr, SymbolTable symTable) {
-		// Get name and check if it is an ArrayList function
-		String funcName = expr.funcIdTok.value.toString();
-		if(funcName.startsWith("ArrayList")) {
-			return evaluate_ArrayFunctionCall(expr, symTable);
+		return callFunction(expr, lookupFunction(expr, symTable), symTable);
+	}
+	
+	private Object callFunction(Expr.FunctionCall expr, Expr.FunctionDef funcExpr, SymbolTable symTable) {
+		return runFunction(funcExpr, evaluateArguments(expr, funcExpr, symTable), expr.funcIdTok.line);
+	}
+	
+	// Runs a function with arguments that have already been checked
+	private Object runFunction(Expr.FunctionDef funcExpr, Object[] args, int lineNum) {
+		if(profiler == null && budget == null) {
+			return runBody(funcExpr, args, lineNum);
 		}
-		
-		// Find function in symbol table		
-		Object func = symTable.getValue(expr.funcIdTok);
-		if(!(func instanceof Expr.FunctionDef)) {
-			error("Attempted to run function "+funcName+" but found a variable of type "+func.getClass().getSimpleName()+" instead", expr.funcIdTok.line);
+		if(budget != null) {
+			budget.enterCall(lineNum);
 		}
-		
-		Expr.FunctionDef funcExpr = (Expr.FunctionDef) func;
-		SymbolTable funcSymTable = new SymbolTable(globalSymTable);
-		
-		//Check arguments length
-		if(expr.arguments.size() != funcExpr.parameters.size()) {
-			error("Expected "+funcExpr.parameters.size()+"arguments for function "+funcName+" but got "+expr.arguments.size()+" arguments instead", expr.funcIdTok.line);
+		if(profiler != null) {
+			profiler.enterFunction(funcExpr);
+		}
+		try {
+			return runBody(funcExpr, args, lineNum);
+		} finally {
+			if(profiler != null) {
+				profiler.exitFunction();
+			}
+			if(budget != null) {
+				budget.exitCall();
+			}
+		}
+	}
+	
+	// Each call gets its own symbol table, so calls running on different tasks only share the global table
+	private Object runBody(Expr.FunctionDef funcExpr, Object[] args, int lineNum) {
+		Frames frames = Thread.currentThread() == mainThread ? mainFrames : taskFrames.get();
+		SymbolTable funcSymTable = frames.push(globalSymTable, funcExpr.numSlots);
+		try {
+			for(int i = 0; i < args.length; i++) {
+				funcSymTable.setValue(0, funcExpr.parameters.get(i).slot, args[i]);
+			}
+			
+			//Run function body and check return type
+			while(true) {
+				Object res = evaluate(funcExpr.funcBlock, funcSymTable);
+				if(!(res instanceof TailCall)) {
+					return checkReturnValue(res, funcExpr, lineNum);
+				}
+				
+				// The function ended by calling itself, so run the body again in the same symbol table instead of growing the Java stack
+				// Checking the return value once at the end is the same as checking it after every call since the check doesn't change the value
+				TailCall tailCall = (TailCall) res;
+				if(profiler != null) {
+					profiler.tailCall(funcExpr);
+				}
+				if(budget != null) {
+					budget.step(tailCall.lineNum);
+				}
+				funcSymTable.clear();
+				for(int i = 0; i < tailCall.args.length; i++) {
+					funcSymTable.setValue(0, funcExpr.parameters.get(i).slot, tailCall.args[i]);
+				}
+				lineNum = tailCall.lineNum;
+			}
+		} finally {
+			frames.pop();
 		}
+	}
+	
+	// Evaluates the arguments of a call and checks them against the function's parameters
+	private Object[] evaluateArguments(Expr.FunctionCall expr, Expr.FunctionDef funcExpr, SymbolTable symTable) {
+		//Check arguments length
+		checkArgCount(expr.arguments.size(), funcExpr, (String) expr.funcIdTok.value, expr.funcIdTok.line);
 		
 		//Check argument types against parameter types
-		for(int i=0; i<expr.arguments.size(); i++) {
+		Object[] args = new Object[expr.arguments.size()];
+		for(int i=0; i<args.length; i++) {
 			//Get each argument and its matching parameter
 			Object arg = evaluate(expr.arguments.get(i), symTable);
 			Expr.Parameter param = funcExpr.parameters.get(i);
-			TokenType paramType = param.varType.type;
-			
-			//After double checking it is the right type, add it to the symbol table
-			Object checkedArg = arg;
-			if(param.arrayDegree == 0) {
-				checkedArg = getTypeCheckedObj(arg, paramType, expr.funcIdTok.line);
+			args[i] = checkArgument(arg, param, expr.funcIdTok.line);
+		}
+		return args;
+	}
+	
+	// Checks arguments that were evaluated before being passed to a function, used for calls run as a Task
+	public static void checkArguments(Expr.FunctionDef funcExpr, Object[] args, String funcName, int lineNum) {
+		checkArgCount(args.length, funcExpr, funcName, lineNum);
+		for(int i = 0; i < args.length; i++) {
+			args[i] = checkArgument(args[i], funcExpr.parameters.get(i), lineNum);
+		}
+	}
+	
+	// X f(args) finds the function and evaluates the arguments right away, then runs the call on a Task
+	private Object evaluate_Execute(Expr.Execute expr, SymbolTable symTable) {
+		Expr.FunctionCall call = expr.call;
+		Expr.FunctionDef funcExpr = lookupFunction(call, symTable);
+		Object[] args = new Object[call.arguments.size()];
+		for(int i = 0; i < args.length; i++) {
+			args[i] = evaluate(call.arguments.get(i), symTable);
+		}
+		
+		String funcName = (String) call.funcIdTok.value;
+		int lineNum = call.funcIdTok.line;
+		globalSymTable.share();
+		return Task.start(funcExpr, args, funcName, lineNum, (func, funcArgs) -> {
+			checkArguments(func, funcArgs, funcName, lineNum);
+			return runFunction(func, funcArgs, lineNum);
+		});
+	}
+	
+	// Symbol tables for the calls running on one thread, one per call on the stack
+	// Nothing can hold on to a call's table once it returns (functions only see the global table, not the table they were defined in),
+	// so the table is cleared and used again by the next call that reaches the same depth instead of creating a new one for every call
+	private static final class Frames {
+		private SymbolTable[] tables = new SymbolTable[16];
+		private int depth = 0;
+		
+		SymbolTable push(SymbolTable globals, int numSlots) {
+			if(depth == tables.length) {
+				tables = Arrays.copyOf(tables, depth * 2);
 			}
-			else if(!arg.getClass().getName().equals(ArrayList.class.getName())) {
-				error("Cannot assign non-array value to array parameter",param.varIdTok.line);
+			SymbolTable table = tables[depth];
+			if(table == null || table.capacity() < numSlots) {
+				table = new SymbolTable(globals, numSlots);
+				tables[depth] = table;
 			}
-				
-			funcSymTable.setValue((String) param.varIdTok.value, checkedArg);
+			depth++;
+			return table;
+		}
+		
+		// The table is cleared right away so it doesn't keep the call's values alive
+		void pop() {
+			tables[--depth].clear();
+		}
+	}
+	
+	// Returned by a tail call to the function the return is in, which then runs its body again with these arguments
+	private static final class TailCall {
+		final Object[] args;
+		final int lineNum;
+		
+		TailCall(Object[] args, int lineNum) {
+			this.args = args;
+			this.lineNum = lineNum;
 		}
+	}
+	
+	// Each call site remembers the function it found and which symbol table it was found in
+	// The cache is only used if the function variable is still in that same table and no function in it has been defined or replaced since
+	// Calls that find their function in a different table every time, like calling a function parameter, just replace the cache
+	static final class CallSiteCache {
+		final SymbolTable table;
+		final int version;
+		final Expr.FunctionDef func;
 		
-		//Run function body and check return type
-		Object res = evaluate(funcExpr.funcBlock, funcSymTable);
+		CallSiteCache(SymbolTable table, int version, Expr.FunctionDef func) {
+			this.table = table;
+			this.version = version;
+			this.func = func;
+		}
+	}
+	
+	private Expr.FunctionDef lookupFunction(Expr.FunctionCall expr, SymbolTable symTable) {
+		// Find function in symbol table, getValue reports functions that were never defined
+		Object func = null;
+		if(expr.depth >= 0) {
+			SymbolTable table = symTable.getTable(expr.depth);
+			CallSiteCache cache = expr.cache;
+			if(cache != null && cache.table == table && cache.version == table.functionVersion()) {
+				return cache.func;
+			}
+			
+			int version = table.functionVersion();
+			func = symTable.getValue(expr.depth, expr.slot, expr.funcIdTok);
+			if(func instanceof Expr.FunctionDef) {
+				expr.cache = new CallSiteCache(table, version, (Expr.FunctionDef) func);
+				return (Expr.FunctionDef) func;
+			}
+		}
+		else {
+			func = symTable.getValue(expr.depth, expr.slot, expr.funcIdTok);
+		}
+		notAFunctionError(func, (String) expr.funcIdTok.value, expr.funcIdTok.line);
+		return null;
+	}
+	
+	// Checks an argument against the type of the parameter it is being passed to
+	public static Object checkArgument(Object arg, Expr.Parameter param, int lineNum) {
+		if(param.arrayDegree == 0) {
+			return getTypeCheckedObj(arg, param.varType.type, lineNum);
+		}
+		else if(!(arg instanceof SulfurArray)) {
+			error("Cannot assign non-array value to array parameter",param.varIdTok.line);
+		}
+		else if(param.arrayDegree == 1) {
+			((SulfurArray) arg).specialize(param.varType.type);
+		}
+		return arg;
+	}
+	
+	// Checks the value a function body finished with against the function's return type
+	public static Object checkReturnValue(Object res, Expr.FunctionDef funcExpr, int lineNum) {
 		checkForInvalidUsage(res, true);
 		if(funcExpr.returnType == null)
 			return null;
 		
-		return getTypeCheckedObj(res, funcExpr.returnType.type, expr.funcIdTok.line);
+		return getTypeCheckedObj(res, funcExpr.returnType.type, lineNum);
 	}
 	
-	// Array function calls are saved in a Expr.FunctionCall expression at parsing but are different because the method name always starts with ArrayList_
-	// These calls happen every time the property accessor (~) is used on an array
+	//Throws an error if the number of arguments doesn't match the number of parameters
+	public static void checkArgCount(int numArgs, Expr.FunctionDef funcExpr, String funcName, int lineNum) {
+		if(numArgs != funcExpr.parameters.size()) {
+			error("Expected "+funcExpr.parameters.size()+"arguments for function "+funcName+" but got "+numArgs+" arguments instead", lineNum);
+		}
+	}
+	
+	public static void notAFunctionError(Object func, String funcName, int lineNum) {
+		error("Attempted to run function "+funcName+" but found a variable of type "+typeName(func)+" instead", lineNum);
+	}
+	
+	// Array method calls happen every time the property accessor (~) is used on an array
 	// EX:
 	// A arr N[]V {61}
 	// arr~add(42)
 	// arr~get(0)
 	// 
-	// These function calls all directly correspond to valid ArrayList methods
-	private Object evaluate_ArrayFunctionCall(Expr.FunctionCall expr, SymbolTable symTable) {
-		ArrayList<Object> args = new ArrayList<Object>();
-		for(Expr e : expr.arguments) {
-			args.add(evaluate(e, symTable));
+	// These method calls all directly correspond to List methods on SulfurArray
+	// No method takes more than two arguments, so they are passed separately instead of in a new array for every call
+	private Object evaluate_ArrayMethodCall(Expr.ArrayMethodCall expr, SymbolTable symTable) {
+		Object array = evaluate(expr.array, symTable);
+		int numArgs = expr.arguments.size();
+		Object arg1 = numArgs > 0 ? evaluate(expr.arguments.get(0), symTable) : null;
+		Object arg2 = numArgs > 1 ? evaluate(expr.arguments.get(1), symTable) : null;
+		// Any extra arguments are still evaluated before the argument count error
+		for(int i = 2; i < numArgs; i++) {
+			evaluate(expr.arguments.get(i), symTable);
 		}
-		
-		// First argument should always be the array
-		if(!args.get(0).getClass().getName().equals(ArrayList.class.getName())) {
-			error("Expected array", expr.funcIdTok.line);
+		return performArrayMethod(expr.method, array, arg1, arg2, numArgs, expr.methodTok.line);
+	}
+	
+	// Waits for a task to finish and gives back what its function returned
+	public static Object await(Object task, int line) {
+		if(!(task instanceof Task)) {
+			error("Expected task", line);
 		}
-		@SuppressWarnings("unchecked")
-		ArrayList<Object> list = (ArrayList<Object>) args.get(0);
-		
-		// Argument count doesn't include array
-		int numExtraArgs = args.size() - 1;
-		int line = expr.funcIdTok.line;
+		return ((Task) task).await(line);
+	}
+	
+	// Runs an array method on already evaluated arguments, arg1 and arg2 are null when there are fewer arguments
+	public static Object performArrayMethod(ArrayMethod method, Object array, Object arg1, Object arg2, int numArgs, int line) {
+		if(!(array instanceof SulfurArray)) {
+			error("Expected array", line);
+		}
+		SulfurArray list = (SulfurArray) array;
 		
-		switch((String) expr.funcIdTok.value) {
-		case "ArrayList_size":
-		case "ArrayList_length":
-			checkArgLength(numExtraArgs, 0, line);
+		switch(method) {
+		case SIZE:
+		case LENGTH:
+			checkArgLength(numArgs, 0, line);
 			return list.size();
 			
-		case "ArrayList_get":
-			checkArgLength(numExtraArgs, 1, line);
-			Integer index = (Integer) getTypeCheckedObj(args.get(1), TokenType.INTEGER_T, line);
+		case GET:
+			checkArgLength(numArgs, 1, line);
+			Integer index = (Integer) getTypeCheckedObj(arg1, TokenType.INTEGER_T, line);
 			return list.get(index);
-		case "ArrayList_set":
-			checkArgLength(numExtraArgs, 1, line);
-			Integer idx = (Integer) getTypeCheckedObj(args.get(1), TokenType.INTEGER_T, line);
-			return list.set(idx, args.get(2));
-		case "ArrayList_clone":
-			checkArgLength(numExtraArgs, 0, line);
-			return list.clone();
-		case "ArrayList_indexof":	
-			checkArgLength(numExtraArgs, 1, line);
-			return list.indexOf(args.get(1));
-		case "ArrayList_contains":	
-			checkArgLength(numExtraArgs, 1, line);
-			return list.contains(args.get(1));
-		case "ArrayList_remove":
-			checkArgLength(numExtraArgs, 1, line);
-			Integer idx2 = (Integer) getTypeCheckedObj(args.get(1), TokenType.INTEGER_T, line);
-			return list.remove(idx2);
-		case "ArrayList_add":
-			if(numExtraArgs == 2) {
-				Integer insertIdx = (Integer) getTypeCheckedObj(args.get(1), TokenType.INTEGER_T, line);
-				list.add(insertIdx, args.get(2));
+		case SET:
+			// Takes the index and the new value, set used to expect a single argument and then fail reading the missing value
+			checkArgLength(numArgs, 2, line);
+			Integer idx = (Integer) getTypeCheckedObj(arg1, TokenType.INTEGER_T, line);
+			return list.set(idx, arg2);
+		case CLONE:
+			checkArgLength(numArgs, 0, line);
+			return list.copy();
+		case INDEXOF:
+			checkArgLength(numArgs, 1, line);
+			return list.indexOf(arg1);
+		case CONTAINS:
+			checkArgLength(numArgs, 1, line);
+			return list.contains(arg1);
+		case REMOVE:
+			checkArgLength(numArgs, 1, line);
+			Integer idx2 = (Integer) getTypeCheckedObj(arg1, TokenType.INTEGER_T, line);
+			// Removes the first element equal to the index rather than the element at the index
+			return list.remove((Object) idx2);
+		case ADD:
+			if(numArgs == 2) {
+				Integer insertIdx = (Integer) getTypeCheckedObj(arg1, TokenType.INTEGER_T, line);
+				list.add(insertIdx, arg2);
 				return true;
 			}
-			checkArgLength(numExtraArgs, 1, line);
-			return list.add(args.get(1));
-		case "ArrayList_clear":
-			checkArgLength(numExtraArgs, 0, line);
+			checkArgLength(numArgs, 1, line);
+			return list.add(arg1);
+		case CLEAR:
+			checkArgLength(numArgs, 0, line);
 			list.clear();
 			break;
 		default:
-			error("Unrecognized array method "+expr.funcIdTok.value, line);
+			break;
 		}
 		return null;
 	}
 	
+	// Used by compiled code for calls with more than two arguments, which always fail once the arguments are evaluated
+	public static Object performArrayMethod(ArrayMethod method, Object array, Object[] args, int line) {
+		return performArrayMethod(method, array, args[0], args[1], args.length, line);
+	}
+	
 	//Throws an error if expected argument length is not matched
-	private void checkArgLength(int numArgs, int expectedNum, int lineNum) {
+	private static void checkArgLength(int numArgs, int expectedNum, int lineNum) {
 		if(numArgs != expectedNum) {
 			error("Expected "+expectedNum+" arguments but received "+numArgs, lineNum);
 		}
@@ -220,29 +483,42 @@ public class Interpreter {
 	private Object evaluate_PrintStmt(Expr.PrintStmt expr, SymbolTable symTable) {
 		for(Expr e : expr.arguments) {
 			Object res = evaluate(e, symTable);
-			System.out.print(res);
+			out.print(res);
 		}
 		return null;
 	}
 	
 	private Object evaluate_FunctionDef(Expr.FunctionDef expr, SymbolTable symTable) {
-		symTable.setValue(expr.funcIdTok.value.toString(), expr);
+		symTable.setValue(expr.depth, expr.slot, expr);
 		return null;
 	}
 	
 	private Object evaluate_ReturnStmt(Expr.ReturnStmt expr, SymbolTable symTable) {
+		if(expr.isTailCall) {
+			Expr.FunctionCall call = (Expr.FunctionCall) expr.returnExp;
+			Expr.FunctionDef funcExpr = lookupFunction(call, symTable);
+			if(funcExpr == expr.function) {
+				return new TailCall(evaluateArguments(call, funcExpr, symTable), call.funcIdTok.line);
+			}
+			return callFunction(call, funcExpr, symTable);
+		}
 		return evaluate(expr.returnExp, symTable);
 	}
 	
 	// While loop that continues as long as the condition results in a true boolean
 	private Object evaluate_WhileStatement(Expr.WhileStatement expr, SymbolTable symTable) {
-		SymbolTable loopSymTable = new SymbolTable(symTable);
+		SymbolTable loopSymTable = expr.hasScope ? new SymbolTable(symTable, expr.numSlots) : symTable;
 		
 		while(true) {
-			Object conditionalRes = evaluate(expr.condition, loopSymTable);
-			if(!(Boolean) getTypeCheckedObj(conditionalRes, TokenType.BOOLEAN_T, expr.lineNum)) {
+			if(!evaluateCondition(expr.condition, loopSymTable, expr.lineNum)) {
 				break;
 			}
+			if(profiler != null) {
+				profiler.iteration(expr);
+			}
+			if(budget != null) {
+				budget.iteration(expr.lineNum);
+			}
 			
 			// Return result if a return statement is run
 			Object returnedRes = evaluate(expr.block, loopSymTable);
@@ -261,17 +537,16 @@ public class Interpreter {
 	
 	private Object evaluate_FlowControlStmt(Expr.FlowControlStmt expr, SymbolTable symTable) {
 		if(expr.ctrlTok.type == TokenType.QUIT) {
-			System.exit(0);
+			throw new Termination.Quit();
 		}
 		return expr.ctrlTok.type;
 	}
 	
 	private Object evaluate_IfStatement(Expr.IfStatement expr, SymbolTable symTable) {
-		SymbolTable ifSymTable = new SymbolTable(symTable);
+		SymbolTable ifSymTable = expr.hasScope ? new SymbolTable(symTable, expr.numSlots) : symTable;
 		
 		for(Expr.ConditionalBlock ifBlock : expr.conditionalBlocks) {
-			Object conditionalRes = evaluate(ifBlock.condition, ifSymTable);
-			if(!(Boolean) getTypeCheckedObj(conditionalRes, TokenType.BOOLEAN_T, ifBlock.lineNum)) {
+			if(!evaluateCondition(ifBlock.condition, ifSymTable, ifBlock.lineNum)) {
 				continue;
 			}
 			
@@ -282,16 +557,47 @@ public class Interpreter {
 	}
 	
 	private Object evaluate_BinaryOp(Expr.BinaryOp expr, SymbolTable symTable) {
+		if(isLogical(expr.operator.type)) {
+			return finishLogicalOp(expr, evaluate(expr.left, symTable), symTable);
+		}
+		
+		int resultType = Specializer.resultType(expr);
+		if(resultType != Specializer.GENERIC) {
+			return evaluateSpecialized(expr, resultType, symTable);
+		}
+		
 		Object left = evaluate(expr.left, symTable);
 		Object right = evaluate(expr.right, symTable);
-		int lineNum = expr.operator.line;
-		
+		return Specializer.binaryOp(expr, left, right);
+	}
+	
+	// & and | only evaluate their right operand when the left one doesn't already decide the result
+	private Object finishLogicalOp(Expr.BinaryOp expr, Object left, SymbolTable symTable) {
+		if(shortCircuits(expr.operator.type, left)) {
+			return left;
+		}
+		return Specializer.binaryOp(expr, left, evaluate(expr.right, symTable));
+	}
+	
+	public static boolean isLogical(TokenType operator) {
+		return operator == TokenType.AND || operator == TokenType.OR;
+	}
+	
+	// True when the left operand of & is false or the left operand of | is true
+	// A left operand that isn't a boolean never short circuits, so the right one is still evaluated before the type error is reported
+	public static boolean shortCircuits(TokenType operator, Object left) {
+		return left instanceof Boolean && (Boolean) left == (operator == TokenType.OR);
+	}
+	
+	// Performs a binary operation on already evaluated operands
+	// This is the generic path used by operations the Specializer could not specialize
+	public static Object performBinaryOp(TokenType operator, Object left, Object right, int lineNum) {
 		//System.out.println("PERFORMING "+left.toString()+" "+expr.operator.type+" "+right.toString());
 		// Handles the following operations
 		// AND('&'), OR('|'), MODULUS('%'), ADD('+'), SUB('-'), MULTIPLY('*'), DIVIDE('/'), EQUALITY('='), LESS_THAN('<'), GREATER_THAN('>'),
 		//LT_EQ, GT_EQ, NOT_EQ,
 
-		switch(expr.operator.type) {
+		switch(operator) {
 		case ADD:
 			return OperationPerformer.add(left, right, lineNum);
 		case SUB:
@@ -319,19 +625,27 @@ public class Interpreter {
 		case GT_EQ:
 			return OperationPerformer.gt_eq(left, right, lineNum);
 		default:
-			error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			error("Unknown operator type "+operator, lineNum);
 		}
 		return null;
 	}
 	
 	private Object evaluate_UnaryOp(Expr.UnaryOp expr, SymbolTable symTable) {
-		TokenType t = expr.operator.type;
-		Object o = evaluate(expr.right, symTable);
+		int resultType = Specializer.resultType(expr);
+		if(resultType != Specializer.GENERIC) {
+			return evaluateSpecialized(expr, resultType, symTable);
+		}
 		
+		Object o = evaluate(expr.right, symTable);
+		return Specializer.unaryOp(expr, o);
+	}
+	
+	// Handles +, -, !, and casting on an already evaluated operand
+	public static Object performUnaryOp(TokenType t, Object o, int lineNum) {
 		switch(t) {
 		case ADD:
 			//Ensure plus is not used on boolean or string
-			getTypeCheckedObj(o, TokenType.DOUBLE_T, expr.operator.line);
+			getTypeCheckedObj(o, TokenType.DOUBLE_T, lineNum);
 			return o;
 		case SUB:
 			if(o instanceof Double) return -(Double) o;
@@ -339,10 +653,10 @@ public class Interpreter {
 			if(o instanceof Long) return -(Long) o;
 			if(o instanceof Integer) return -(Integer) o;
 			if(o instanceof Character) return -(Character) o;
-			error("Cannot use negation on object of type "+o.getClass().getSimpleName(), expr.operator.line);
+			error("Cannot use negation on object of type "+typeName(o), lineNum);
 		case NOT:
 			if(o instanceof Boolean) return !(Boolean) o;
-			error("Cannot use not operator on object of type "+o.getClass().getSimpleName(), expr.operator.line);
+			error("Cannot use not operator on object of type "+typeName(o), lineNum);
 		// HANDLE CASTING
 		case DOUBLE_T:
 			return OperationPerformer.toDouble(o);
@@ -356,6 +670,8 @@ public class Interpreter {
 			return OperationPerformer.toCharacter(o);
 		case STRING_T:
 			return o.toString();
+		case OBJECT_T:
+			return o;
 		case BOOLEAN_T:
 			if(o instanceof String) {
 				return ((String) o).length() > 0;
@@ -364,52 +680,382 @@ public class Interpreter {
 				return o;
 			}
 			else if(o.getClass().isArray()) {
-				error("Cannot cast array to boolean", expr.operator.line);
+				error("Cannot cast array to boolean", lineNum);
 			}
 			else {
 				//Any non-zero number is true
 				return ((Integer) OperationPerformer.toInteger(o)).intValue() != 0;
 			}
 		default:
-			error("Unrecognized unary operator type "+t, expr.operator.line);
+			error("Unrecognized unary operator type "+t, lineNum);
 		}
 		return null;
 	}
 	
 	private Object evaluate_VariableAccess(Expr.VariableAccess expr, SymbolTable symTable) {
-		return symTable.getValue(expr.varIdTok);
+		return symTable.getValue(expr.depth, expr.slot, expr.varIdTok);
 	}
 	
 	private Object evaluate_Assign(Expr.Assign expr, SymbolTable symTable) {
-		Object value = evaluate(expr.value, symTable);
-		//Don't bother checking the type of arrays, its too much of a hassle
-		if(expr.arrayDegree == 0)
-			value = getTypeCheckedObj(value, expr.dataTypeTok.type, expr.varIdTok.line);
-		else if(!value.getClass().getName().equals(ArrayList.class.getName())) {
-			error("Cannot assign non-array value to array variable",expr.varIdTok.line);
+		if(expr.isUpdate && globalSymTable.isShared() && symTable.getTable(expr.depth) == globalSymTable) {
+			updateGlobal(expr, symTable);
+			return null;
+		}
+		// Ints, longs, doubles, and booleans are stored unboxed when the value has exactly the variable's type
+		if(expr.arrayDegree == 0 && expr.state != Specializer.GENERIC) {
+			try {
+				switch(expr.dataTypeTok.type) {
+				case INTEGER_T:
+					symTable.setInt(expr.depth, expr.slot, evaluateInt(expr.value, symTable));
+					return null;
+				case LONG_T:
+					symTable.setLong(expr.depth, expr.slot, evaluateLong(expr.value, symTable));
+					return null;
+				case DOUBLE_T:
+					symTable.setDouble(expr.depth, expr.slot, evaluateDouble(expr.value, symTable));
+					return null;
+				case BOOLEAN_T:
+					symTable.setBoolean(expr.depth, expr.slot, evaluateBoolean(expr.value, symTable));
+					return null;
+				default:
+					expr.state = Specializer.GENERIC;
+					break;
+				}
+			} catch(UnexpectedResultException e) {
+				// The value still gets checked since types like D also accept ints without converting them
+				expr.state = Specializer.GENERIC;
+				symTable.setValue(expr.depth, expr.slot, checkAssignedValue(e.result, expr.dataTypeTok.type, expr.arrayDegree, expr.varIdTok.line));
+				return null;
+			}
 		}
 		
-		symTable.setValue((String) expr.varIdTok.value, value);
+		Object value = evaluate(expr.value, symTable);
+		symTable.setValue(expr.depth, expr.slot, checkAssignedValue(value, expr.dataTypeTok.type, expr.arrayDegree, expr.varIdTok.line));
 		return null;
 	}
 	
+	// Once tasks share the global table, a global variable that is assigned a value computed from itself is updated atomically
+	private void updateGlobal(Expr.Assign expr, SymbolTable symTable) {
+		symTable.update(expr.depth, expr.slot, () -> checkAssignedValue(evaluate(expr.value, symTable), expr.dataTypeTok.type, expr.arrayDegree, expr.varIdTok.line));
+	}
+	
+	// Checks a value against the type of the variable it is being assigned to
+	public static Object checkAssignedValue(Object value, TokenType type, int arrayDegree, int lineNum) {
+		//Don't bother checking the type of arrays, its too much of a hassle
+		if(arrayDegree == 0)
+			value = getTypeCheckedObj(value, type, lineNum);
+		else if(!(value instanceof SulfurArray)) {
+			error("Cannot assign non-array value to array variable",lineNum);
+		}
+		// Elements still aren't checked, but arrays of a primitive type store them unboxed if they all have that type
+		else if(arrayDegree == 1) {
+			((SulfurArray) value).specialize(type);
+		}
+		return value;
+	}
+	
 	private Object evaluate_Grouping(Expr.Grouping expr, SymbolTable symTable) {
 		return evaluate(expr.expression, symTable);
 	}
 	
+	//////////////////// UNBOXED EVALUATION ////////////////////
+	// evaluate returns every value as an Object, which boxes every number and boolean it passes along
+	// These typed versions pass values around unboxed for operations the Specializer has specialized on primitive operands
+	// When a value turns out to have a different type they throw an UnexpectedResultException holding the boxed value instead
+	
+	// Evaluates a specialized operation unboxed so that only its final result gets boxed
+	private Object evaluateSpecialized(Expr expr, int resultType, SymbolTable symTable) {
+		try {
+			switch(resultType) {
+			case Specializer.INT:
+				return evaluateInt(expr, symTable);
+			case Specializer.LONG:
+				return evaluateLong(expr, symTable);
+			case Specializer.DOUBLE:
+				return evaluateDouble(expr, symTable);
+			default:
+				return evaluateBoolean(expr, symTable);
+			}
+		} catch(UnexpectedResultException e) {
+			return e.result;
+		}
+	}
+	
+	// Conditions of if statements and while loops
+	private boolean evaluateCondition(Expr condition, SymbolTable symTable, int lineNum) {
+		try {
+			return evaluateBoolean(condition, symTable);
+		} catch(UnexpectedResultException e) {
+			return checkCondition(e.result, lineNum);
+		}
+	}
+	
+	private int evaluateInt(Expr expr, SymbolTable symTable) throws UnexpectedResultException {
+		if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			return symTable.getInt(access.depth, access.slot, access.varIdTok);
+		}
+		else if(expr instanceof Expr.Literal) {
+			return expectInt(((Expr.Literal) expr).value);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return evaluateInt(((Expr.Grouping) expr).expression, symTable);
+		}
+		else if(expr instanceof Expr.BinaryOp && Specializer.resultType((Expr.BinaryOp) expr) == Specializer.INT) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			int left;
+			try {
+				left = evaluateInt(binOp.left, symTable);
+			} catch(UnexpectedResultException e) {
+				return expectInt(evaluateRightBoxed(binOp, e.result, symTable));
+			}
+			try {
+				return Specializer.intArithmetic(binOp, left, evaluateInt(binOp.right, symTable));
+			} catch(UnexpectedResultException e) {
+				return expectInt(Specializer.binaryOp(binOp, left, e.result));
+			}
+		}
+		else if(expr instanceof Expr.UnaryOp && Specializer.resultType((Expr.UnaryOp) expr) == Specializer.INT) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			try {
+				switch(unOp.state) {
+				case Specializer.INT:
+					int o = evaluateInt(unOp.right, symTable);
+					return unOp.operator.type == TokenType.SUB ? -o : o;
+				case Specializer.LONG:
+					return (int) evaluateLong(unOp.right, symTable);
+				default:
+					return (int) evaluateDouble(unOp.right, symTable);
+				}
+			} catch(UnexpectedResultException e) {
+				return expectInt(Specializer.unaryOp(unOp, e.result));
+			}
+		}
+		return expectInt(evaluate(expr, symTable));
+	}
+	
+	private long evaluateLong(Expr expr, SymbolTable symTable) throws UnexpectedResultException {
+		if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			return symTable.getLong(access.depth, access.slot, access.varIdTok);
+		}
+		else if(expr instanceof Expr.Literal) {
+			return expectLong(((Expr.Literal) expr).value);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return evaluateLong(((Expr.Grouping) expr).expression, symTable);
+		}
+		else if(expr instanceof Expr.BinaryOp && Specializer.resultType((Expr.BinaryOp) expr) == Specializer.LONG) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			long left;
+			try {
+				left = evaluateLong(binOp.left, symTable);
+			} catch(UnexpectedResultException e) {
+				return expectLong(evaluateRightBoxed(binOp, e.result, symTable));
+			}
+			try {
+				return Specializer.longArithmetic(binOp, left, evaluateLong(binOp.right, symTable));
+			} catch(UnexpectedResultException e) {
+				return expectLong(Specializer.binaryOp(binOp, left, e.result));
+			}
+		}
+		else if(expr instanceof Expr.UnaryOp && Specializer.resultType((Expr.UnaryOp) expr) == Specializer.LONG) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			try {
+				switch(unOp.state) {
+				case Specializer.LONG:
+					long o = evaluateLong(unOp.right, symTable);
+					return unOp.operator.type == TokenType.SUB ? -o : o;
+				case Specializer.INT:
+					return (long) evaluateInt(unOp.right, symTable);
+				default:
+					return (long) evaluateDouble(unOp.right, symTable);
+				}
+			} catch(UnexpectedResultException e) {
+				return expectLong(Specializer.unaryOp(unOp, e.result));
+			}
+		}
+		return expectLong(evaluate(expr, symTable));
+	}
+	
+	private double evaluateDouble(Expr expr, SymbolTable symTable) throws UnexpectedResultException {
+		if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			return symTable.getDouble(access.depth, access.slot, access.varIdTok);
+		}
+		else if(expr instanceof Expr.Literal) {
+			return expectDouble(((Expr.Literal) expr).value);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return evaluateDouble(((Expr.Grouping) expr).expression, symTable);
+		}
+		else if(expr instanceof Expr.BinaryOp && Specializer.resultType((Expr.BinaryOp) expr) == Specializer.DOUBLE) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			double left;
+			try {
+				left = evaluateDouble(binOp.left, symTable);
+			} catch(UnexpectedResultException e) {
+				return expectDouble(evaluateRightBoxed(binOp, e.result, symTable));
+			}
+			try {
+				return Specializer.doubleArithmetic(binOp, left, evaluateDouble(binOp.right, symTable));
+			} catch(UnexpectedResultException e) {
+				return expectDouble(Specializer.binaryOp(binOp, left, e.result));
+			}
+		}
+		else if(expr instanceof Expr.UnaryOp && Specializer.resultType((Expr.UnaryOp) expr) == Specializer.DOUBLE) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			try {
+				switch(unOp.state) {
+				case Specializer.DOUBLE:
+					double o = evaluateDouble(unOp.right, symTable);
+					return unOp.operator.type == TokenType.SUB ? -o : o;
+				case Specializer.INT:
+					return (double) evaluateInt(unOp.right, symTable);
+				default:
+					return (double) evaluateLong(unOp.right, symTable);
+				}
+			} catch(UnexpectedResultException e) {
+				return expectDouble(Specializer.unaryOp(unOp, e.result));
+			}
+		}
+		return expectDouble(evaluate(expr, symTable));
+	}
+	
+	private boolean evaluateBoolean(Expr expr, SymbolTable symTable) throws UnexpectedResultException {
+		if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			return symTable.getBoolean(access.depth, access.slot, access.varIdTok);
+		}
+		else if(expr instanceof Expr.Literal) {
+			return expectBoolean(((Expr.Literal) expr).value);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return evaluateBoolean(((Expr.Grouping) expr).expression, symTable);
+		}
+		else if(expr instanceof Expr.BinaryOp && isLogical(((Expr.BinaryOp) expr).operator.type)) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			boolean left;
+			try {
+				left = evaluateBoolean(binOp.left, symTable);
+			} catch(UnexpectedResultException e) {
+				return expectBoolean(finishLogicalOp(binOp, e.result, symTable));
+			}
+			if(left == (binOp.operator.type == TokenType.OR)) {
+				return left;
+			}
+			// The result is whatever the right operand is, as long as it is a boolean
+			try {
+				return evaluateBoolean(binOp.right, symTable);
+			} catch(UnexpectedResultException e) {
+				return expectBoolean(Specializer.binaryOp(binOp, left, e.result));
+			}
+		}
+		else if(expr instanceof Expr.BinaryOp && Specializer.resultType((Expr.BinaryOp) expr) == Specializer.BOOLEAN) {
+			// A comparison, the operands have the type the operation was specialized for
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			switch(binOp.state) {
+			case Specializer.INT:
+				int intLeft;
+				try {
+					intLeft = evaluateInt(binOp.left, symTable);
+				} catch(UnexpectedResultException e) {
+					return expectBoolean(evaluateRightBoxed(binOp, e.result, symTable));
+				}
+				try {
+					return Specializer.intComparison(binOp, intLeft, evaluateInt(binOp.right, symTable));
+				} catch(UnexpectedResultException e) {
+					return expectBoolean(Specializer.binaryOp(binOp, intLeft, e.result));
+				}
+			case Specializer.LONG:
+				long longLeft;
+				try {
+					longLeft = evaluateLong(binOp.left, symTable);
+				} catch(UnexpectedResultException e) {
+					return expectBoolean(evaluateRightBoxed(binOp, e.result, symTable));
+				}
+				try {
+					return Specializer.longComparison(binOp, longLeft, evaluateLong(binOp.right, symTable));
+				} catch(UnexpectedResultException e) {
+					return expectBoolean(Specializer.binaryOp(binOp, longLeft, e.result));
+				}
+			default:
+				double doubleLeft;
+				try {
+					doubleLeft = evaluateDouble(binOp.left, symTable);
+				} catch(UnexpectedResultException e) {
+					return expectBoolean(evaluateRightBoxed(binOp, e.result, symTable));
+				}
+				try {
+					return Specializer.doubleComparison(binOp, doubleLeft, evaluateDouble(binOp.right, symTable));
+				} catch(UnexpectedResultException e) {
+					return expectBoolean(Specializer.binaryOp(binOp, doubleLeft, e.result));
+				}
+			}
+		}
+		else if(expr instanceof Expr.UnaryOp && Specializer.resultType((Expr.UnaryOp) expr) == Specializer.BOOLEAN) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			try {
+				return !evaluateBoolean(unOp.right, symTable);
+			} catch(UnexpectedResultException e) {
+				return expectBoolean(Specializer.unaryOp(unOp, e.result));
+			}
+		}
+		return expectBoolean(evaluate(expr, symTable));
+	}
+	
+	// Used when the left operand of a specialized operation did not have the expected type
+	// The right operand is evaluated normally and the operation is finished with both values boxed
+	private Object evaluateRightBoxed(Expr.BinaryOp expr, Object left, SymbolTable symTable) {
+		return Specializer.binaryOp(expr, left, evaluate(expr.right, symTable));
+	}
+	
+	private static int expectInt(Object o) throws UnexpectedResultException {
+		if(o instanceof Integer) {
+			return (Integer) o;
+		}
+		throw new UnexpectedResultException(o);
+	}
+	
+	private static long expectLong(Object o) throws UnexpectedResultException {
+		if(o instanceof Long) {
+			return (Long) o;
+		}
+		throw new UnexpectedResultException(o);
+	}
+	
+	private static double expectDouble(Object o) throws UnexpectedResultException {
+		if(o instanceof Double) {
+			return (Double) o;
+		}
+		throw new UnexpectedResultException(o);
+	}
+	
+	private static boolean expectBoolean(Object o) throws UnexpectedResultException {
+		if(o instanceof Boolean) {
+			return (Boolean) o;
+		}
+		throw new UnexpectedResultException(o);
+	}
+	
 	private Object evaluate_ValueArray(Expr.ValueArray expr, SymbolTable symTable) {
-		ArrayList<Object> resultArray = new ArrayList<Object>();
-		
-		for(Expr e : expr.value) {
-			resultArray.add(evaluate(e, symTable));
+		Object[] values = new Object[expr.value.size()];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = evaluate(expr.value.get(i), symTable);
 		}
-		return resultArray;
+		return new SulfurArray(values);
+	}
+	
+	// Used by compiled code, which evaluates all the values before creating the array
+	// The array of values becomes the array's storage, so it has to be a new one
+	public static SulfurArray newArray(Object... values) {
+		return new SulfurArray(values);
 	}
 	
 	//Checks to see if an object matches the expected type or can automatically be casted to the correct type
 	//Returns a new object, casted to match the expected type
 	//Throws an error if the type does not match and cannot be casted
-	private Object getTypeCheckedObj(Object o, TokenType type, int lineNum) {
+	public static Object getTypeCheckedObj(Object o, TokenType type, int lineNum) {
 		switch(type) {
 		case DOUBLE_T:
 			if(o instanceof Double) return (Double) o;
@@ -430,16 +1076,39 @@ public class Interpreter {
 			break;
 		case FUNCTION:
 			if(o instanceof Expr.FunctionDef) return o;
+			break;
+		case OBJECT_T:
+			// Any value, like a Task
+			if(o != null) return o;
+			break;
 		default:
 			break;
 		}
-		error("Type mismatch: Expected "+type+" but got "+o.getClass().getSimpleName()+" instead", lineNum);
+		error("Type mismatch: Expected "+type+" but got "+typeName(o)+" instead", lineNum);
 		return null;
 	}
 	
+	// Name of a value's type for error messages, arrays are still called ArrayList like they were before they had their own class
+	public static String typeName(Object o) {
+		return o instanceof SulfurArray ? "ArrayList" : o.getClass().getSimpleName();
+	}
+	
+	// Used by compiled code, which keeps variables outside of symbol tables, to report variables that are used before being defined
+	public static Object checkDefined(Object value, String varName, int lineNum) {
+		if(value == null) {
+			error("Variable "+varName+" not defined", lineNum);
+		}
+		return value;
+	}
+	
+	// Conditions of if statements and while loops must be booleans
+	public static boolean checkCondition(Object conditionalRes, int lineNum) {
+		return (Boolean) getTypeCheckedObj(conditionalRes, TokenType.BOOLEAN_T, lineNum);
+	}
+	
 	// Called when a function returns and when a program finishes
 	// Ensures that jump_out, kontinue, and return are not used in the wrong place
-	private void checkForInvalidUsage(Object retObject, boolean funcCall) {
+	public static void checkForInvalidUsage(Object retObject, boolean funcCall) {
 		if(retObject == TokenType.JUMP_OUT) {
 			throw new RuntimeException("Attempted to use a jump out statement outside of a while loop");
 		}
@@ -0,0 +1,676 @@
+package Sulfur;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/*
+ * Compiles a resolved expression tree into a JVM class so HotSpot can JIT the Sulfur code directly instead of walking the tree.
+ * The tree is translated into Java source with one method per function definition, which is then compiled in memory
+ * with the JDK's built in compiler and loaded with its own class loader.
+ * Generating source instead of raw bytecode keeps the project free of bytecode libraries and lets javac handle stack maps and constant pools.
+ *
+ * Variables from function, while, and if symbol tables become local variables of the generated methods
+ * and global variables are kept in a SymbolTable, so tasks share them the same way they do in the Interpreter. All the actual operations are done by the same static methods
+ * the Interpreter uses, so both produce the same results and the same errors.
+ *
+ * If the program uses something that can't be compiled, or there is no compiler available (running on a JRE),
+ * tryCompile returns null and the caller should fall back to the Interpreter.
+ */
+public class JvmCompiler {
+
+	// Implemented by the generated class, which flushes the output when the program ends
+	public interface CompiledProgram {
+		Termination run(OutputSink out);
+	}
+
+	private static final String CLASS_NAME = "SulfurProgram";
+
+	// Maps a binary operator to the OperationPerformer method that handles it
+	private static final HashMap<TokenType, String> binaryOpMethods = new HashMap<>();
+	static {
+		binaryOpMethods.put(TokenType.ADD, "add");
+		binaryOpMethods.put(TokenType.SUB, "sub");
+		binaryOpMethods.put(TokenType.MULTIPLY, "multiply");
+		binaryOpMethods.put(TokenType.DIVIDE, "divide");
+		binaryOpMethods.put(TokenType.MODULUS, "modulus");
+		binaryOpMethods.put(TokenType.AND, "and");
+		binaryOpMethods.put(TokenType.OR, "or");
+		binaryOpMethods.put(TokenType.EQUALITY, "equality");
+		binaryOpMethods.put(TokenType.LESS_THAN, "less_than");
+		binaryOpMethods.put(TokenType.GREATER_THAN, "greater_than");
+		binaryOpMethods.put(TokenType.NOT_EQ, "not_eq");
+		binaryOpMethods.put(TokenType.LT_EQ, "lt_eq");
+		binaryOpMethods.put(TokenType.GT_EQ, "gt_eq");
+	}
+
+	// Compile time view of the symbol table chain, a null prefix means the global table
+	private static class CodeScope {
+		final String prefix;
+		final CodeScope parent;
+
+		CodeScope(String prefix, CodeScope parent) {
+			this.prefix = prefix;
+			this.parent = parent;
+		}
+	}
+
+	private final Expr.StatementBlock program;
+	private final StringBuilder src = new StringBuilder();
+	private int indent = 0;
+
+	// Literals, function definitions, and parameters are handed to the generated class in the constant array K
+	private final ArrayList<Object> constants = new ArrayList<Object>();
+	private final IdentityHashMap<Object, Integer> constantIndexes = new IdentityHashMap<Object, Integer>();
+	private final ArrayList<Expr.FunctionDef> functions = new ArrayList<Expr.FunctionDef>();
+
+	// State for the method currently being generated
+	private Expr.FunctionDef currentFunction = null;
+	private final ArrayList<String> loopLabels = new ArrayList<String>();
+	private int nameCount = 0;
+	// Nesting level of & and | operations, which decides the temporary local each one uses
+	private int logicalDepth = 0;
+	private int maxLogicalDepth = 0;
+
+	private JvmCompiler(Expr.StatementBlock program) {
+		this.program = program;
+	}
+
+	// Compiles the program or returns null if it can't be compiled
+	// The program must have already been run through the Resolver
+	public static CompiledProgram tryCompile(Expr.StatementBlock program) {
+		try {
+			return new JvmCompiler(program).compile();
+		} catch(UnsupportedOperationException e) {
+			System.err.println("JVM backend could not compile program, falling back to interpreter: "+e.getMessage());
+			return null;
+		}
+	}
+
+	private CompiledProgram compile() {
+		functions.addAll(Resolver.findFunctions(program));
+		String source = generateSource();
+		HashMap<String, byte[]> classes = compileSource(source);
+
+		try {
+			Class<?> programClass = new SulfurClassLoader(classes, JvmCompiler.class.getClassLoader()).loadClass(CLASS_NAME);
+			return (CompiledProgram) programClass.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+		} catch(ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Failed to load compiled class: "+e);
+		}
+	}
+
+	//////////////////// SOURCE GENERATION ////////////////////
+
+	private String generateSource() {
+		for(Expr.FunctionDef func : functions) {
+			constant(func);
+			for(Expr.Parameter param : func.parameters) {
+				constant(param);
+			}
+		}
+
+		line("import Sulfur.*;");
+		line("");
+		line("public class "+CLASS_NAME+" implements JvmCompiler.CompiledProgram {");
+		indent++;
+		line("private final Object[] K;");
+		line("private final SymbolTable G = new SymbolTable(null, "+program.numSlots+");");
+		line("private OutputSink out;");
+		line("");
+		line("public "+CLASS_NAME+"(Object[] constants) {");
+		line("\tK = constants;");
+		line("}");
+		line("");
+		line("public Termination run(OutputSink out) {");
+		line("\tthis.out = out;");
+		line("\ttry {");
+		line("\t\treturn Termination.run(this::main);");
+		line("\t} finally {");
+		line("\t\tout.flush();");
+		line("\t}");
+		line("}");
+		line("");
+
+		// Top level code
+		line("private void main() {");
+		indent++;
+		int bodyStart = beginMethodBody();
+		CodeScope global = new CodeScope(null, null);
+		statementBlock(program, global);
+		declareTemps(bodyStart);
+		indent--;
+		line("}");
+
+		for(int i = 0; i < functions.size(); i++) {
+			functionMethod(i);
+		}
+		callMethod();
+		executeMethod();
+
+		indent--;
+		line("}");
+		return src.toString();
+	}
+
+	// Generates the method for a function definition
+	// fn is the function value found at the call site, which might not be this function if the variable was reassigned
+	private void functionMethod(int funcIdx) {
+		Expr.FunctionDef func = functions.get(funcIdx);
+		currentFunction = func;
+		loopLabels.clear();
+
+		StringBuilder params = new StringBuilder("Object fn");
+		StringBuilder args = new StringBuilder();
+		for(int i = 0; i < func.parameters.size(); i++) {
+			params.append(", Object a"+i);
+			args.append(i > 0 ? ", a"+i : "a"+i);
+		}
+
+		line("");
+		line("// "+func.funcIdTok.value+" defined on line "+func.funcIdTok.line);
+		line("private Object "+methodName(funcIdx)+"("+params+", int line) {");
+		indent++;
+		int bodyStart = beginMethodBody();
+		line("if(fn != "+constant(func)+") {");
+		line("\treturn call(fn, new Object[] {"+args+"}, \""+func.funcIdTok.value+"\", line);");
+		line("}");
+
+		// A tail call to the function itself assigns the new arguments and jumps back here
+		if(func.hasTailCalls) {
+			line("tail: while(true) {");
+			indent++;
+		}
+
+		CodeScope funcScope = new CodeScope(newName("s"), new CodeScope(null, null));
+		declareLocals(funcScope, func.numSlots);
+		for(int i = 0; i < func.parameters.size(); i++) {
+			Expr.Parameter param = func.parameters.get(i);
+			line(funcScope.prefix+"_"+param.slot+" = Interpreter.checkArgument(a"+i+", (Expr.Parameter) "+constant(param)+", line);");
+		}
+
+		if(statementBlock(func.funcBlock, funcScope)) {
+			line("return Interpreter.checkReturnValue(null, (Expr.FunctionDef) "+constant(func)+", line);");
+		}
+		if(func.hasTailCalls) {
+			indent--;
+			line("}");
+		}
+		declareTemps(bodyStart);
+		indent--;
+		line("}");
+		currentFunction = null;
+	}
+
+	// Calls a function value that is only known at runtime, like a function passed as an argument
+	private void callMethod() {
+		line("");
+		line("private Object call(Object fn, Object[] args, String funcName, int line) {");
+		indent++;
+		for(int i = 0; i < functions.size(); i++) {
+			Expr.FunctionDef func = functions.get(i);
+			StringBuilder args = new StringBuilder();
+			for(int j = 0; j < func.parameters.size(); j++) {
+				args.append(", args["+j+"]");
+			}
+			line("if(fn == "+constant(func)+") {");
+			line("\tInterpreter.checkArgCount(args.length, (Expr.FunctionDef) fn, funcName, line);");
+			line("\treturn "+methodName(i)+"(fn"+args+", line);");
+			line("}");
+		}
+		line("Interpreter.notAFunctionError(fn, funcName, line);");
+		line("return null;");
+		indent--;
+		line("}");
+	}
+
+	// Starts a Task, the globals are shared first the same way the Interpreter shares its global symbol table
+	private void executeMethod() {
+		line("");
+		line("private Task execute(Object fn, Object[] args, String funcName, int line) {");
+		line("\tG.share();");
+		line("\treturn Task.start(fn, args, funcName, line, (taskFn, taskArgs) -> call(taskFn, taskArgs, funcName, line));");
+		line("}");
+	}
+
+	// Generates each statement in the block
+	// Returns false if the block ends with a break, continue, or Q, in which case javac would reject any code after it
+	private boolean statementBlock(Expr.StatementBlock block, CodeScope scope) {
+		for(Expr e : block.statements) {
+			if(!statement(e, scope)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Returns whether the code after this statement can be reached
+	private boolean statement(Expr expr, CodeScope scope) {
+		if(expr instanceof Expr.Assign) {
+			Expr.Assign assign = (Expr.Assign) expr;
+			String value = "Interpreter.checkAssignedValue("+expression(assign.value, scope)+", TokenType."+assign.dataTypeTok.type.name()+", "+assign.arrayDegree+", "+assign.varIdTok.line+")";
+			if(assign.isUpdate && scopeAt(assign.depth, scope).prefix == null) {
+				// Once tasks have started, the value is computed while holding the variable's lock so no other task can change it in between
+				line("if(G.isShared()) {");
+				line("\tsynchronized(G.lock("+assign.slot+")) {");
+				line("\t\t"+store(assign.depth, assign.slot, scope, value));
+				line("\t}");
+				line("} else {");
+				line("\t"+store(assign.depth, assign.slot, scope, value));
+				line("}");
+			}
+			else {
+				line(store(assign.depth, assign.slot, scope, value));
+			}
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			Expr.FunctionDef func = (Expr.FunctionDef) expr;
+			line(store(func.depth, func.slot, scope, constant(func)));
+		}
+		else if(Interpreter.isCall(expr)) {
+			// Function calls used as statements ignore their return value
+			line(expression(expr, scope)+";");
+		}
+		else if(expr instanceof Expr.PrintStmt) {
+			for(Expr e : ((Expr.PrintStmt) expr).arguments) {
+				line("out.print("+expression(e, scope)+");");
+			}
+		}
+		else if(expr instanceof Expr.ReturnStmt) {
+			returnStmt((Expr.ReturnStmt) expr, scope);
+		}
+		else if(expr instanceof Expr.WhileStatement) {
+			whileStmt((Expr.WhileStatement) expr, scope);
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			ifStmt((Expr.IfStatement) expr, scope);
+		}
+		else if(expr instanceof Expr.FlowControlStmt) {
+			return flowControlStmt((Expr.FlowControlStmt) expr);
+		}
+		else {
+			throw new UnsupportedOperationException("Unsupported statement type "+expr.getClass().getSimpleName());
+		}
+		return true;
+	}
+
+	// A return whose value is null (like calling a function with no return type) doesn't actually return
+	private void returnStmt(Expr.ReturnStmt expr, CodeScope scope) {
+		String res = newName("r");
+		line("{");
+		indent++;
+		if(expr.isTailCall) {
+			tailCall((Expr.FunctionCall) expr.returnExp, scope);
+		}
+		line("Object "+res+" = "+expression(expr.returnExp, scope)+";");
+		if(currentFunction != null) {
+			line("if("+res+" != null) return Interpreter.checkReturnValue("+res+", (Expr.FunctionDef) "+constant(currentFunction)+", line);");
+		}
+		else {
+			line("if("+res+" != null) Interpreter.checkForInvalidUsage("+res+", false);");
+		}
+		indent--;
+		line("}");
+	}
+
+	private void whileStmt(Expr.WhileStatement expr, CodeScope scope) {
+		CodeScope loopScope = expr.hasScope ? new CodeScope(newName("s"), scope) : scope;
+		String label = newName("loop");
+
+		line("{");
+		indent++;
+		declareLocals(loopScope, expr.numSlots);
+		line(label+": while(true) {");
+		indent++;
+		line("if(!Interpreter.checkCondition("+expression(expr.condition, loopScope)+", "+expr.lineNum+")) break;");
+		loopLabels.add(label);
+		statementBlock(expr.block, loopScope);
+		loopLabels.remove(loopLabels.size() - 1);
+		indent--;
+		line("}");
+		indent--;
+		line("}");
+	}
+
+	// The conditions and their blocks share one set of variables, the else block uses the enclosing scope
+	private void ifStmt(Expr.IfStatement expr, CodeScope scope) {
+		CodeScope ifScope = expr.hasScope ? new CodeScope(newName("s"), scope) : scope;
+
+		line("{");
+		indent++;
+		declareLocals(ifScope, expr.numSlots);
+		String keyword = "if";
+		for(Expr.ConditionalBlock ifBlock : expr.conditionalBlocks) {
+			line(keyword+"(Interpreter.checkCondition("+expression(ifBlock.condition, ifScope)+", "+ifBlock.lineNum+")) {");
+			indent++;
+			statementBlock(ifBlock.body, ifScope);
+			indent--;
+			line("}");
+			keyword = "else if";
+		}
+		if(expr.elseBlock != null) {
+			line("else {");
+			indent++;
+			statementBlock(expr.elseBlock, scope);
+			indent--;
+			line("}");
+		}
+		indent--;
+		line("}");
+	}
+
+	// Break and continue outside of a loop are errors, just like in the Interpreter
+	private boolean flowControlStmt(Expr.FlowControlStmt expr) {
+		TokenType type = expr.ctrlTok.type;
+		if(type == TokenType.QUIT) {
+			line("throw new Termination.Quit();");
+			return false;
+		}
+		if(loopLabels.isEmpty()) {
+			line("Interpreter.checkForInvalidUsage(TokenType."+type.name()+", false);");
+			return true;
+		}
+
+		String label = loopLabels.get(loopLabels.size() - 1);
+		line((type == TokenType.JUMP_OUT ? "break " : "continue ")+label+";");
+		return false;
+	}
+
+	// Returns Java code for an expression that results in an Object
+	private String expression(Expr expr, CodeScope scope) {
+		if(expr instanceof Expr.Literal) {
+			return constant(((Expr.Literal) expr).value);
+		}
+		else if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			return "Interpreter.checkDefined("+variable(access.depth, access.slot, scope)+", \""+access.varIdTok.value+"\", "+access.varIdTok.line+")";
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return expression(((Expr.Grouping) expr).expression, scope);
+		}
+		else if(expr instanceof Expr.BinaryOp && Interpreter.isLogical(((Expr.BinaryOp) expr).operator.type)) {
+			return logicalOp((Expr.BinaryOp) expr, scope);
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			String method = binaryOpMethods.get(binOp.operator.type);
+			if(method == null) {
+				throw new UnsupportedOperationException("Unknown operator type "+binOp.operator.type);
+			}
+			return "OperationPerformer."+method+"("+expression(binOp.left, scope)+", "+expression(binOp.right, scope)+", "+binOp.operator.line+")";
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			return "Interpreter.performUnaryOp(TokenType."+unOp.operator.type.name()+", "+expression(unOp.right, scope)+", "+unOp.operator.line+")";
+		}
+		else if(expr instanceof Expr.ValueArray) {
+			return "Interpreter.newArray(new Object[] {"+expressionList(((Expr.ValueArray) expr).value, scope)+"})";
+		}
+		else if(expr instanceof Expr.FunctionCall) {
+			return functionCall((Expr.FunctionCall) expr, scope);
+		}
+		else if(expr instanceof Expr.ArrayMethodCall) {
+			return arrayMethodCall((Expr.ArrayMethodCall) expr, scope);
+		}
+		else if(expr instanceof Expr.Execute) {
+			return execute((Expr.Execute) expr, scope);
+		}
+		else if(expr instanceof Expr.Await) {
+			Expr.Await await = (Expr.Await) expr;
+			return "Interpreter.await("+expression(await.task, scope)+", "+await.awaitTok.line+")";
+		}
+		throw new UnsupportedOperationException("Unsupported expression type "+expr.getClass().getSimpleName());
+	}
+
+	// & and | skip their right operand when the left one already decides the result
+	// The left value is kept in a temporary local so it can be both tested and passed on, each level of nesting gets its own
+	private String logicalOp(Expr.BinaryOp expr, CodeScope scope) {
+		String temp = "t"+logicalDepth;
+		logicalDepth++;
+		maxLogicalDepth = Math.max(maxLogicalDepth, logicalDepth);
+		String left = expression(expr.left, scope);
+		String right = expression(expr.right, scope);
+		logicalDepth--;
+
+		String op = expr.operator.type.name();
+		return "(Interpreter.shortCircuits(TokenType."+op+", "+temp+" = "+left+") ? "+temp+" : OperationPerformer."+binaryOpMethods.get(expr.operator.type)+"("+temp+", "+right+", "+expr.operator.line+"))";
+	}
+
+	// If a returned call turns out to be calling the function it is in, the arguments replace the method's arguments
+	// and the body starts over, the arguments are checked at the start of the body just like a normal call
+	// Otherwise the return statement makes the call normally
+	private void tailCall(Expr.FunctionCall expr, CodeScope scope) {
+		if(expr.funcIdTok.symbol != currentFunction.funcIdTok.symbol || expr.arguments.size() != currentFunction.parameters.size()) {
+			return;
+		}
+		line("if("+functionValue(expr, scope)+" == "+constant(currentFunction)+") {");
+		indent++;
+		for(int i = 0; i < expr.arguments.size(); i++) {
+			line("a"+i+" = "+expression(expr.arguments.get(i), scope)+";");
+		}
+		line("line = "+expr.funcIdTok.line+";");
+		line("continue tail;");
+		indent--;
+		line("}");
+	}
+
+	// The value of the variable a function is called through
+	private String functionValue(Expr.FunctionCall expr, CodeScope scope) {
+		return "Interpreter.checkDefined("+variable(expr.depth, expr.slot, scope)+", \""+expr.funcIdTok.value+"\", "+expr.funcIdTok.line+")";
+	}
+
+	private String functionCall(Expr.FunctionCall expr, CodeScope scope) {
+		String funcName = expr.funcIdTok.value.toString();
+		int line = expr.funcIdTok.line;
+		String args = expressionList(expr.arguments, scope);
+
+		String func = functionValue(expr, scope);
+
+		// Call the function's method directly if there is a function with this name that takes these arguments
+		// The method checks that the function value is actually that function before running
+		for(int i = 0; i < functions.size(); i++) {
+			Expr.FunctionDef def = functions.get(i);
+			if(def.funcIdTok.symbol == expr.funcIdTok.symbol && def.parameters.size() == expr.arguments.size()) {
+				return methodName(i)+"("+func+(args.isEmpty() ? "" : ", "+args)+", "+line+")";
+			}
+		}
+		return "call("+func+", new Object[] {"+args+"}, \""+funcName+"\", "+line+")";
+	}
+
+	// The task is started by execute and goes through call, which checks the arguments before running the function's method
+	private String execute(Expr.Execute expr, CodeScope scope) {
+		Expr.FunctionCall call = expr.call;
+		String funcName = "\""+call.funcIdTok.value+"\"";
+		int line = call.funcIdTok.line;
+		String args = expressionList(call.arguments, scope);
+		return "execute("+functionValue(call, scope)+", new Object[] {"+args+"}, "+funcName+", "+line+")";
+	}
+
+	// Array methods take at most two arguments, calls with more pass them in an array since they only need to be evaluated before the error
+	private String arrayMethodCall(Expr.ArrayMethodCall expr, CodeScope scope) {
+		String method = "ArrayMethod."+expr.method.name();
+		String array = expression(expr.array, scope);
+		int numArgs = expr.arguments.size();
+		int line = expr.methodTok.line;
+
+		if(numArgs > 2) {
+			return "Interpreter.performArrayMethod("+method+", "+array+", new Object[] {"+expressionList(expr.arguments, scope)+"}, "+line+")";
+		}
+		String arg1 = numArgs > 0 ? expression(expr.arguments.get(0), scope) : "null";
+		String arg2 = numArgs > 1 ? expression(expr.arguments.get(1), scope) : "null";
+		return "Interpreter.performArrayMethod("+method+", "+array+", "+arg1+", "+arg2+", "+numArgs+", "+line+")";
+	}
+
+	private String expressionList(List<Expr> exprs, CodeScope scope) {
+		StringBuilder s = new StringBuilder();
+		for(Expr e : exprs) {
+			if(s.length() > 0) s.append(", ");
+			s.append(expression(e, scope));
+		}
+		return s.toString();
+	}
+
+	// Returns the value of the given symbol table slot, globals are read from the G symbol table and locals are Java variables
+	private String variable(int depth, int slot, CodeScope scope) {
+		if(depth < 0) {
+			// Never defined, checkDefined will report the error
+			return "null";
+		}
+		CodeScope s = scopeAt(depth, scope);
+		return s.prefix == null ? "G.get("+slot+")" : s.prefix+"_"+slot;
+	}
+
+	// Returns the statement that stores a value in the given symbol table slot
+	private String store(int depth, int slot, CodeScope scope, String value) {
+		CodeScope s = scopeAt(depth, scope);
+		return s.prefix == null ? "G.set("+slot+", "+value+");" : s.prefix+"_"+slot+" = "+value+";";
+	}
+
+	private CodeScope scopeAt(int depth, CodeScope scope) {
+		CodeScope s = scope;
+		for(int i = 0; i < depth; i++) {
+			s = s.parent;
+		}
+		return s;
+	}
+
+	// Every time a symbol table would be created, its variables start out undefined
+	// Returns where the method body starts in the source so declareTemps can add the temporaries there once the body is generated
+	private int beginMethodBody() {
+		maxLogicalDepth = 0;
+		return src.length();
+	}
+
+	private void declareTemps(int bodyStart) {
+		StringBuilder decls = new StringBuilder();
+		for(int i = 0; i < maxLogicalDepth; i++) {
+			for(int j = 0; j < indent; j++) {
+				decls.append('\t');
+			}
+			decls.append("Object t"+i+" = null;\n");
+		}
+		src.insert(bodyStart, decls);
+	}
+
+	private void declareLocals(CodeScope scope, int numSlots) {
+		for(int i = 0; i < numSlots; i++) {
+			line("Object "+scope.prefix+"_"+i+" = null;");
+		}
+	}
+
+	private String constant(Object value) {
+		Integer idx = constantIndexes.get(value);
+		if(idx == null) {
+			idx = constants.size();
+			constants.add(value);
+			constantIndexes.put(value, idx);
+		}
+		return "K["+idx+"]";
+	}
+
+	private String methodName(int funcIdx) {
+		return "f"+funcIdx+"_"+functions.get(funcIdx).funcIdTok.value;
+	}
+
+	private String newName(String prefix) {
+		return prefix + (nameCount++);
+	}
+
+	private void line(String code) {
+		for(int i = 0; i < indent; i++) {
+			src.append('\t');
+		}
+		src.append(code);
+		src.append('\n');
+	}
+
+	//////////////////// IN MEMORY COMPILATION ////////////////////
+
+	// Compiles the generated source and returns the bytes of each class file by class name
+	private static HashMap<String, byte[]> compileSource(String source) {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if(javac == null) {
+			throw new UnsupportedOperationException("No Java compiler available, a JDK is required");
+		}
+
+		JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///"+CLASS_NAME+".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		MemoryFileManager fileManager = new MemoryFileManager(javac.getStandardFileManager(diagnostics, null, null));
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-nowarn");
+
+		boolean success = javac.getTask(null, fileManager, diagnostics, options, null, Arrays.asList(sourceFile)).call();
+		if(!success) {
+			StringBuilder errors = new StringBuilder();
+			for(Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+				errors.append(d.getMessage(null));
+				errors.append('\n');
+			}
+			throw new UnsupportedOperationException("javac failed: "+errors);
+		}
+		return fileManager.classes;
+	}
+
+	// Keeps compiled class files in memory instead of writing them to disk
+	private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		final HashMap<String, byte[]> classes = new HashMap<String, byte[]>();
+
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("mem:///"+className.replace('.', '/')+kind.extension), kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					return new ByteArrayOutputStream() {
+						@Override
+						public void close() {
+							classes.put(className, toByteArray());
+						}
+					};
+				}
+			};
+		}
+	}
+
+	// Loads the generated classes, everything else comes from the parent class loader
+	private static class SulfurClassLoader extends ClassLoader {
+		private final HashMap<String, byte[]> classes;
+
+		SulfurClassLoader(HashMap<String, byte[]> classes, ClassLoader parent) {
+			super(parent);
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if(bytes == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -1,35 +1,33 @@
 package Sulfur;
-import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Lexer {
-	private ArrayList<Token> tokenList = null;
+	private TokenBuffer tokens = null;
 	private int idx = 0;
+	// Where the token being read starts
+	private int tokenStart = 0;
 	private int lineNum = 1;
 	private final String codeStr;
+	private final Symbols symbols = new Symbols();
 	
 	public Lexer(String codeStr) {
 		this.codeStr = codeStr;
 	}
 	
-	public ArrayList<Token> lex() {
-		if(tokenList == null) {
-			tokenList = new ArrayList<>();
+	public TokenBuffer lex() {
+		if(tokens == null) {
+			tokens = new TokenBuffer(symbols);
 		}
 		else {
-			return tokenList;
+			return tokens;
 		}
 		
-		Pattern whitespacePattern = Pattern.compile("^\\s");
-		
+		// Characters are read directly by index so lexing stays linear in the size of the file
+		// No substrings of the remaining code are made and no regular expressions are used
 		while(idx < codeStr.length()) {
 			char c = codeStr.charAt(idx);
 			
 			// Ignore and skip over whitespace
-			Matcher matcher = whitespacePattern.matcher(codeStr.substring(idx, idx+1));
-			boolean isWhitespace = matcher.find();
-			if(isWhitespace) {
+			if(isWhitespace(c)) {
 				if(c == '\n') {
 					lineNum++;
 				}
@@ -38,6 +36,7 @@ public class Lexer {
 			}
 			
 			// Find token that matches the given character or throw an error
+			tokenStart = idx;
 			TokenType tType = TokenType.getTokenType(c);
 			if(tType == null) {
 				throwError("UNEXPECTED");
@@ -48,10 +47,10 @@ public class Lexer {
 				getNumber();
 				break;
 			case TRUE:
-				tokenList.add(new Token(TokenType.BOOLEAN, true, lineNum));
+				tokens.add(TokenType.BOOLEAN, true, lineNum, tokenStart);
 				break;
 			case UNTRUE:
-				tokenList.add(new Token(TokenType.BOOLEAN, false, lineNum));
+				tokens.add(TokenType.BOOLEAN, false, lineNum, tokenStart);
 				break;
 			case STRING:
 				getString();
@@ -73,81 +72,115 @@ public class Lexer {
 					idx++;
 					tType = (tType == TokenType.LESS_THAN) ? TokenType.LT_EQ : (tType == TokenType.GREATER_THAN ? TokenType.GT_EQ : TokenType.NOT_EQ);
 				}
-				tokenList.add(new Token(tType, lineNum));
+				tokens.add(tType, lineNum, tokenStart);
 				break;
 			default:
-				tokenList.add(new Token(tType, lineNum));
+				tokens.add(tType, lineNum, tokenStart);
 				break;
 			}
 			idx++;
 		}
 		
-		tokenList.add(new Token(TokenType.EOF, lineNum));
-		return tokenList;
+		tokens.add(TokenType.EOF, lineNum, idx);
+		return tokens;
+	}
+	
+	// Same characters as the regex class \s
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	// Same characters as the regex '.', which does not match line terminators
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	// Returns the character at the given index or 0 if the index is past the end of the code
+	private char charAt(int i) {
+		return i < codeStr.length() ? codeStr.charAt(i) : 0;
 	}
 	
 	// Removes a comment that is in the form M# COMMENT #M
 	private void removeComment() {
-		Pattern pattern = Pattern.compile("^[M]#.*?#[M]", Pattern.DOTALL);
-		Matcher matcher = pattern.matcher(codeStr.substring(idx));
-		boolean matchFound = matcher.find();
-		
-		if(matchFound) {
-			idx += matcher.end() - 1;
-			lineNum += matcher.group().lines().count()-1;
-		}
-		else {
+		if(charAt(idx+1) != '#') {
 			throwError("COMMENT");
 		}
+		
+		// Look for the first closing #M, counting the lines that are skipped over
+		int lines = 0;
+		for(int i = idx+2; i < codeStr.length(); i++) {
+			char c = codeStr.charAt(i);
+			if(c == '#' && charAt(i+1) == 'M') {
+				idx = i+1;
+				lineNum += lines;
+				return;
+			}
+			else if(c == '\n') {
+				lines++;
+			}
+			else if(c == '\r') {
+				// \r\n only counts as a single line break
+				lines++;
+				if(charAt(i+1) == '\n') {
+					i++;
+				}
+			}
+		}
+		throwError("COMMENT");
 	}
 	
 	// Finds and creates a token from a string of lowercase letters, underscores, and numbers
 	// Cannot start with a number
 	private void getIdentifier() {
-		Pattern pattern = Pattern.compile("^[a-z_][a-z0-9_]*");
-		Matcher matcher = pattern.matcher(codeStr.substring(idx));
-		boolean matchFound = matcher.find();
-		
-		if(matchFound) {
-			// Remember to strip single quotes from character before adding it
-			tokenList.add(new Token(TokenType.IDENTIFIER, matcher.group(), lineNum));
-			idx += matcher.end() - 1;
-		}
-		else {
-			throwError("IDENTIFIER");
+		int end = idx+1;
+		while(end < codeStr.length()) {
+			char c = codeStr.charAt(end);
+			if(!((c >= 'a' && c <= 'z') || isDigit(c) || c == '_')) {
+				break;
+			}
+			end++;
 		}
+		
+		// Only the first use of a name makes a String for it
+		tokens.addIdentifier(symbols.intern(codeStr, idx, end), lineNum, tokenStart);
+		idx = end - 1;
 	}
 	
 	// Finds a character enclosed in single quotes and adds it as a token to the list
 	private void getCharacter() {
-		Pattern pattern = Pattern.compile("^'\\\\?.'");
-		Matcher matcher = pattern.matcher(codeStr.substring(idx));
-		boolean matchFound = matcher.find();
-		
-		if(matchFound) {
-			// Remember to strip single quotes from character before adding it
-			tokenList.add(new Token(TokenType.CHARACTER, matcher.group().substring(1, matcher.group().length()-1).translateEscapes().charAt(0), lineNum));
-			idx += matcher.end() - 1;
+		int end;
+		// Escaped character like '\n' or '\''
+		if(charAt(idx+1) == '\\' && idx+3 < codeStr.length() && !isLineTerminator(codeStr.charAt(idx+2)) && codeStr.charAt(idx+3) == '\'') {
+			end = idx+4;
+		}
+		else if(idx+2 < codeStr.length() && !isLineTerminator(codeStr.charAt(idx+1)) && codeStr.charAt(idx+2) == '\'') {
+			end = idx+3;
 		}
 		else {
 			throwError("CHARACTER");
+			return;
 		}
+		
+		// Strip single quotes from character before adding it
+		tokens.add(TokenType.CHARACTER, codeStr.substring(idx+1, end-1).translateEscapes().charAt(0), lineNum, tokenStart);
+		idx = end - 1;
 	}
 
 	// Finds a string enclosed in double quotes and adds it as a token to the list
 	private void getString() {
-		Pattern pattern = Pattern.compile("^\"([^\"]|\\\\\")*\"");
-		Matcher matcher = pattern.matcher(codeStr.substring(idx));
-		boolean matchFound = matcher.find();
-		
-		if(matchFound) {
-			// Remember to strip double quotes from string before adding it
-			tokenList.add(new Token(TokenType.STRING, matcher.group().substring(1, matcher.group().length()-1).translateEscapes(), lineNum));
-			idx += matcher.end() - 1;
-		}
-		else {
+		// The string ends at the next double quote, newlines inside the string are not counted
+		int end = codeStr.indexOf('"', idx+1);
+		if(end == -1) {
 			throwError("STRING");
 		}
+		
+		// Strip double quotes from string before adding it
+		tokens.add(TokenType.STRING, codeStr.substring(idx+1, end).translateEscapes(), lineNum, tokenStart);
+		idx = end;
 	}
 	
 	// Finds a number of type int, long, float, or double and adds the corresponding token to the list
@@ -157,55 +190,71 @@ public class Lexer {
 		}
 	}
 	
+	// Returns the index after a run of digits starting at the given index
+	private int skipDigits(int i) {
+		while(i < codeStr.length() && isDigit(codeStr.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+	
 	// Finds and converts an integer value from a string, puts it in a token, and adds the token to the list
+	// Matches digits followed by an optional N or L
 	private boolean getInteger() {
-		Pattern pattern = Pattern.compile("^\\d+[NL]?");
-		Matcher matcher = pattern.matcher(codeStr.substring(idx));
-		boolean matchFound = matcher.find();
+		int end = skipDigits(idx);
+		if(end == idx) {
+			return false;
+		}
+		char suffix = charAt(end);
+		if(suffix == 'N' || suffix == 'L') {
+			end++;
+		}
 		
-		if(matchFound) {
-			try {
-				//Default to int if not specified as a long using 'L'
-				if(!matcher.group().endsWith("L")) {
-					
-					tokenList.add(new Token(TokenType.INTEGER, Integer.parseInt(matcher.group()), lineNum));
-				}
-				else {
-					tokenList.add(new Token(TokenType.LONG, Long.parseLong(matcher.group()), lineNum));
-				}
-			} catch(NumberFormatException e) {
-				throwError("INTEGER");
+		String numStr = codeStr.substring(idx, end);
+		try {
+			//Default to int if not specified as a long using 'L'
+			if(suffix != 'L') {
+				tokens.add(TokenType.INTEGER, Integer.parseInt(numStr), lineNum, tokenStart);
+			}
+			else {
+				tokens.add(TokenType.LONG, Long.parseLong(numStr), lineNum, tokenStart);
 			}
-			idx += matcher.end() - 1;
-			return true;
+		} catch(NumberFormatException e) {
+			throwError("INTEGER");
 		}
-		return false;
+		idx = end - 1;
+		return true;
 	}
 	
 	// Finds a float/double following the letter G or D
+	// Matches digits, a decimal point, digits, an optional exponent, and an optional D or G
 	// Converts the value from a string, puts it in a token, and adds the token to the list
 	// Returns whether or not it succeeds
 	private boolean getFloat() {
-		Pattern pattern = Pattern.compile("^(\\d+\\.\\d+([Ee]\\d+)?)[DG]?");
-		Matcher matcher = pattern.matcher(codeStr.substring(idx));
-		boolean matchFound = matcher.find();
+		int end = skipDigits(idx);
+		if(end == idx || charAt(end) != '.' || !isDigit(charAt(end+1))) {
+			return false;
+		}
+		end = skipDigits(end+1);
 		
-		if(matchFound) {
-			try {
-				//Default to double unless specified with an 'F' for float
-				if(matcher.group().endsWith("F")) {
-					tokenList.add(new Token(TokenType.FLOAT, Float.parseFloat(matcher.group()), lineNum));
-				}
-				else {
-					tokenList.add(new Token(TokenType.DOUBLE, Double.parseDouble(matcher.group()), lineNum));
-				}
-			} catch(NumberFormatException e) {
-				throwError("FLOAT");
-			}
-			idx += matcher.end() - 1;
-			return true;
+		char exp = charAt(end);
+		if((exp == 'E' || exp == 'e') && isDigit(charAt(end+1))) {
+			end = skipDigits(end+1);
+		}
+		char suffix = charAt(end);
+		if(suffix == 'D' || suffix == 'G') {
+			end++;
 		}
-		return false;
+		
+		String numStr = codeStr.substring(idx, end);
+		try {
+			// Always a double, an F after the number isn't part of it and is lexed as its own token
+			tokens.add(TokenType.DOUBLE, Double.parseDouble(numStr), lineNum, tokenStart);
+		} catch(NumberFormatException e) {
+			throwError("FLOAT");
+		}
+		idx = end - 1;
+		return true;
 	}
 	
 	private void throwError(String errName) {
@@ -240,11 +289,6 @@ public class Lexer {
 			errString += "Unknown error.";
 			break;
 		}
-		System.out.println(errString);
-		System.out.println(codeStr.substring(idx));
-		for(Token t : tokenList) {
-			System.out.println(t);
-		}
-		System.exit(1);
+		throw new RuntimeException(errString);
 	}
 }
@@ -0,0 +1,123 @@
+package Sulfur;
+
+/*
+ * How much work the Interpreter lets a program do before stopping it, so a runaway loop or recursion can't keep a thread busy forever.
+ * EX: --max-steps=1000000 --max-iterations=50000 --max-depth=200 --timeout=500
+ *
+ * - steps: loop iterations plus function calls, including tail calls
+ * - iterations: loop iterations
+ * - depth: function calls on the stack at once, counted separately for every task
+ * - time: milliseconds since the program started running
+ * A limit of 0 means no limit. A program that goes over a limit stops with a Termination of kind LIMIT.
+ *
+ * Every loop has to go through a back edge and every recursion through a function call, so those are the only places the Interpreter checks.
+ * Each check is a counter decrement, and the clock is only read every CLOCK_INTERVAL steps.
+ * Tasks share the step and iteration counters without synchronizing, so with tasks running the counts are close but not exact.
+ */
+public final class Limits {
+	public static final Limits NONE = new Limits(0, 0, 0, 0);
+
+	private static final int CLOCK_INTERVAL = 1024;
+
+	public final long maxSteps;
+	public final long maxIterations;
+	public final int maxDepth;
+	public final long maxMillis;
+
+	public Limits(long maxSteps, long maxIterations, int maxDepth, long maxMillis) {
+		if(maxSteps < 0 || maxIterations < 0 || maxDepth < 0 || maxMillis < 0) {
+			throw new IllegalArgumentException("Limits can't be negative");
+		}
+		this.maxSteps = maxSteps;
+		this.maxIterations = maxIterations;
+		this.maxDepth = maxDepth;
+		this.maxMillis = maxMillis;
+	}
+
+	public boolean isUnlimited() {
+		return maxSteps == 0 && maxIterations == 0 && maxDepth == 0 && maxMillis == 0;
+	}
+
+	// Whether a command line argument sets one of the limits
+	public static boolean isOption(String arg) {
+		return arg.startsWith("--max-steps=") || arg.startsWith("--max-iterations=") || arg.startsWith("--max-depth=") || arg.startsWith("--timeout=");
+	}
+
+	// Returns these limits with the one the argument sets changed, throws a NumberFormatException if its value isn't a number
+	public Limits withOption(String arg) {
+		long value = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+		if(arg.startsWith("--max-steps=")) {
+			return new Limits(value, maxIterations, maxDepth, maxMillis);
+		}
+		else if(arg.startsWith("--max-iterations=")) {
+			return new Limits(maxSteps, value, maxDepth, maxMillis);
+		}
+		else if(arg.startsWith("--max-depth=")) {
+			return new Limits(maxSteps, maxIterations, Math.toIntExact(value), maxMillis);
+		}
+		else {
+			return new Limits(maxSteps, maxIterations, maxDepth, value);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Limits(steps "+maxSteps+", iterations "+maxIterations+", depth "+maxDepth+", "+maxMillis+" ms)";
+	}
+
+	// What's left of the limits while one run of a program is going, created when the program starts
+	static final class Budget {
+		private final Limits limits;
+		private final long deadline;
+		private long stepsLeft;
+		private long iterationsLeft;
+		private int clockCountdown = CLOCK_INTERVAL;
+		private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+		Budget(Limits limits) {
+			this.limits = limits;
+			this.stepsLeft = limits.maxSteps > 0 ? limits.maxSteps : Long.MAX_VALUE;
+			this.iterationsLeft = limits.maxIterations > 0 ? limits.maxIterations : Long.MAX_VALUE;
+			this.deadline = System.nanoTime() + limits.maxMillis * 1000000;
+		}
+
+		// Called at the back edge of a loop, before the body runs again
+		void iteration(int lineNum) {
+			if(--iterationsLeft < 0) {
+				throw new Termination.LimitExceeded("[Line "+lineNum+"]: Loop iteration limit of "+limits.maxIterations+" reached");
+			}
+			step(lineNum);
+		}
+
+		// Called before a function's body runs, exitCall has to be called when it ends unless this throws
+		void enterCall(int lineNum) {
+			step(lineNum);
+			if(limits.maxDepth > 0) {
+				int[] calls = depth.get();
+				if(calls[0] >= limits.maxDepth) {
+					throw new Termination.LimitExceeded("[Line "+lineNum+"]: Call depth limit of "+limits.maxDepth+" reached");
+				}
+				calls[0]++;
+			}
+		}
+
+		void exitCall() {
+			if(limits.maxDepth > 0) {
+				depth.get()[0]--;
+			}
+		}
+
+		// A tail call reuses the caller's place on the stack, so it only counts as a step
+		void step(int lineNum) {
+			if(--stepsLeft < 0) {
+				throw new Termination.LimitExceeded("[Line "+lineNum+"]: Step limit of "+limits.maxSteps+" reached");
+			}
+			if(--clockCountdown <= 0) {
+				clockCountdown = CLOCK_INTERVAL;
+				if(limits.maxMillis > 0 && System.nanoTime() - deadline > 0) {
+					throw new Termination.LimitExceeded("[Line "+lineNum+"]: Time limit of "+limits.maxMillis+" ms reached");
+				}
+			}
+		}
+	}
+}
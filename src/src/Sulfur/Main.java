@@ -1,7 +1,10 @@
 package Sulfur;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 public class Main {
@@ -11,12 +14,87 @@ public class Main {
 			System.out.println(arg);
 		}
 		
-		StringBuilder code = new StringBuilder();
 		File f;
 		
+		// Options start with -- and can come before the file name
+		// --engine=jvm compiles the program to JVM bytecode instead of interpreting it
+		// --engine=vm compiles the program to Sulfur bytecode and runs it on the VirtualMachine
+		// --disassemble prints the Sulfur bytecode before running it with the vm engine
+		// --no-optimize skips the Optimizer, which is useful for checking that it doesn't change a program's results
+		// --output=<file> writes the program's output to a file instead of the console
+		// --profile prints where the interpreter spent its time after the program ends
+		// --profile-stacks=<file> writes the profiled call stacks in the collapsed format flame graph tools read
+		// --no-cache always lexes and parses the file instead of using or saving a .sufc file, see AstCache
+		// --cache-dir=<dir> keeps .sufc files in dir instead of next to the source file
+		// --max-steps=<n>, --max-iterations=<n>, --max-depth=<n>, and --timeout=<ms> stop the program when it goes over them, see Limits
+		String engine = "interpreter";
+		String fileName = null;
+		String outputFile = null;
+		boolean profile = false;
+		String stacksFile = null;
+		boolean useCache = true;
+		Path cacheDir = null;
+		Limits limits = Limits.NONE;
+		boolean disassemble = false;
+		boolean optimize = true;
+		for(String arg : args) {
+			if(arg.startsWith("--engine=")) {
+				engine = arg.substring("--engine=".length());
+				if(!engine.equals("interpreter") && !engine.equals("jvm") && !engine.equals("vm")) {
+					System.out.println("Error: Unknown engine "+engine+". Valid options are 'interpreter', 'jvm', or 'vm'.");
+					System.exit(1);
+				}
+			}
+			else if(arg.equals("--disassemble")) {
+				disassemble = true;
+			}
+			else if(arg.equals("--no-optimize")) {
+				optimize = false;
+			}
+			else if(arg.startsWith("--output=")) {
+				outputFile = arg.substring("--output=".length());
+			}
+			else if(arg.equals("--profile")) {
+				profile = true;
+			}
+			else if(arg.startsWith("--profile-stacks=")) {
+				stacksFile = arg.substring("--profile-stacks=".length());
+			}
+			else if(arg.equals("--no-cache")) {
+				useCache = false;
+			}
+			else if(arg.startsWith("--cache-dir=")) {
+				cacheDir = Paths.get(arg.substring("--cache-dir=".length()));
+			}
+			else if(Limits.isOption(arg)) {
+				try {
+					limits = limits.withOption(arg);
+				} catch(RuntimeException e) {
+					System.out.println("Error: Invalid limit "+arg);
+					System.exit(1);
+				}
+			}
+			else if(arg.startsWith("--")) {
+				System.out.println("Error: Unknown option "+arg);
+				System.exit(1);
+			}
+			else {
+				fileName = arg;
+			}
+		}
+		
+		if((profile || stacksFile != null) && !engine.equals("interpreter")) {
+			System.out.println("Error: Profiling is only supported by the interpreter engine.");
+			System.exit(1);
+		}
+		if(!limits.isUnlimited() && !engine.equals("interpreter")) {
+			System.out.println("Error: Limits are only supported by the interpreter engine.");
+			System.exit(1);
+		}
+		
 		// If the user supplies a file name, run it
-		if(args.length > 0) {
-			f =  new File(args[0]);
+		if(fileName != null) {
+			f =  new File(fileName);
 		}
 		//Otherwise run one of the test files
 		else {
@@ -28,16 +106,83 @@ public class Main {
 			//f = new File("C:\\Users\\pc\\vscode-workspace\\CS421\\cs421_project\\example\\comment.suf");
 		}
 		
-		//Scan in whole code file
-		Scanner scan;
+		//Read in whole code file
+		byte[] source;
 		try {
-			scan = new Scanner(f);
-		} catch (FileNotFoundException e) {
+			source = Files.readAllBytes(f.toPath());
+		} catch (IOException e) {
 			System.out.println("Error: File not found.");
 			System.exit(1);
-			scan = null;
+			source = null;
+		}
+		
+		// Use the parse tree saved last time the file was run if it hasn't changed since
+		Expr.StatementBlock res = null;
+		Path cacheFile = null;
+		byte[] cacheKey = null;
+		if(useCache) {
+			cacheKey = AstCache.key(source, optimize);
+			cacheFile = AstCache.cacheFile(f.toPath(), cacheDir, cacheKey);
+			res = AstCache.load(cacheFile, cacheKey);
+		}
+		if(res == null) {
+			try {
+				res = parse(source, optimize);
+			} catch(RuntimeException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			if(useCache) {
+				AstCache.store(cacheFile, cacheKey, res);
+			}
+		}
+		
+		// Run resolver
+		Resolver resolver = new Resolver();
+		resolver.resolve(res);
+		
+		OutputSink out;
+		if(outputFile != null) {
+			try {
+				out = new OutputSink.FileSink(Paths.get(outputFile));
+			} catch(IOException e) {
+				System.out.println("Error: Could not open output file "+outputFile+".");
+				System.exit(1);
+				out = null;
+			}
+		}
+		else {
+			out = OutputSink.standard();
 		}
 		
+		Profiler profiler = profile || stacksFile != null ? new Profiler() : null;
+		System.out.println("\n/////////// PROGRAM OUTPUT ///////////");
+		Termination termination;
+		try {
+			termination = run(res, engine, disassemble, out, profiler, limits);
+		} finally {
+			out.close();
+			// The profile is still reported if the program fails
+			if(profile) {
+				profiler.report(System.err);
+			}
+			if(stacksFile != null) {
+				try {
+					profiler.writeStacks(Paths.get(stacksFile));
+				} catch(IOException e) {
+					System.out.println("Error: Could not write profile to "+stacksFile+".");
+				}
+			}
+		}
+		if(termination.failed()) {
+			System.err.println("\nError: "+termination.message());
+		}
+		System.exit(termination.exitCode());
+	}
+	
+	private static Expr.StatementBlock parse(byte[] source, boolean optimize) {
+		StringBuilder code = new StringBuilder();
+		Scanner scan = new Scanner(new ByteArrayInputStream(source));
 		while(scan.hasNextLine()) {
 			code.append(scan.nextLine());
 			code.append('\n');
@@ -47,26 +192,51 @@ public class Main {
 		
 		// Run lexer
 		Lexer lexr = new Lexer(code.toString());
-		ArrayList<Token> tokenList = lexr.lex();
+		TokenBuffer tokenList = lexr.lex();
 		//printTokens(tokenList);
 		
 		// Run Parser
 		//System.out.println("\n/////////// PARSE TREE ///////////");
 		Parser parser = new Parser(tokenList);
-		Expr res = parser.parse();
+		Expr.StatementBlock res = parser.parse();
 		//System.out.println(res);
 		
-		System.out.println("\n/////////// PROGRAM OUTPUT ///////////");
+		// Simplify constant expressions
+		if(optimize) {
+			res = Optimizer.optimize(res);
+		}
+		return res;
+	}
+	
+	private static Termination run(Expr.StatementBlock res, String engine, boolean disassemble, OutputSink out, Profiler profiler, Limits limits) {
+		// Run compiled code if it was requested and the program can be compiled
+		if(engine.equals("jvm")) {
+			JvmCompiler.CompiledProgram compiled = JvmCompiler.tryCompile(res);
+			if(compiled != null) {
+				return compiled.run(out);
+			}
+		}
+		else if(engine.equals("vm")) {
+			try {
+				Bytecode.Program program = BytecodeCompiler.compile(res);
+				if(disassemble) {
+					System.out.println(Bytecode.disassemble(program));
+				}
+				return new VirtualMachine(program, out).run();
+			} catch(UnsupportedOperationException e) {
+				System.err.println("VM could not compile program, falling back to interpreter: "+e.getMessage());
+			}
+		}
 		
 		// Run interpreter
-		Interpreter interpreter = new Interpreter(res);
-		interpreter.run();
+		Interpreter interpreter = new Interpreter(res, out, profiler, limits);
+		return interpreter.run();
 	}
 	
-	public static void printTokens(ArrayList<Token> tokenList) {
+	public static void printTokens(TokenBuffer tokenList) {
 		System.out.print("/////////// TOKENS ///////////");
 		int line = 0;
-		for(Token t : tokenList) {
+		for(Token t : tokenList.toList()) {
 			while(line < t.line) {
 				line++;
 				System.out.print("\n"+line + ": ");
@@ -3,257 +3,157 @@ package Sulfur;
 /*
  * This class would not need to exist if Java was dynamically typed, but it is not.
  * This class handles all arithmetic/operators used on the various data types.
- * It first uses the 'getResultType' method to ensure the operands are compatible and then chooses the highest order data type as the output.
- * Then, each method casts both operands to the expected output type before performing the operation.
- * This results in a very lengthy class, and I really wish there was a better way to do this.
+ * Every operand is given a type tag with one instanceof chain, and the operation is looked up in a table indexed by [operator][left tag][right tag].
+ * The table is filled in once when the class loads: for each pair of types, 'resultType' picks the highest order data type of the two
+ * (or finds that they can't be used together), and the operation for that pair converts each side straight from its own type to the result type.
+ * Two numbers of the same type, which is most operations in most programs, are just unboxed.
+ * So running an operation never works out the result type again or goes through a chain of instanceof checks to convert a value.
  */
 
 public class OperationPerformer {
 	
+	// Runs one operator on two operands whose types are already known from the table the operation is in
+	@FunctionalInterface
+	private interface Operation {
+		Object apply(Object left, Object right, int lineNum);
+	}
+	
+	// Type tags, index into TAG_TYPES
+	private static final int INTEGER = 0;
+	private static final int LONG = 1;
+	private static final int FLOAT = 2;
+	private static final int DOUBLE = 3;
+	private static final int CHARACTER = 4;
+	private static final int STRING = 5;
+	private static final int BOOLEAN = 6;
+	private static final TokenType[] TAG_TYPES = {TokenType.INTEGER_T, TokenType.LONG_T, TokenType.FLOAT_T, TokenType.DOUBLE_T, TokenType.CHARACTER_T, TokenType.STRING_T, TokenType.BOOLEAN_T};
+	
+	// Operators, index into OPERATIONS, not equal is the opposite of equality so it doesn't have its own
+	private static final int ADD = 0;
+	private static final int SUB = 1;
+	private static final int MULTIPLY = 2;
+	private static final int DIVIDE = 3;
+	private static final int MODULUS = 4;
+	private static final int AND = 5;
+	private static final int OR = 6;
+	private static final int EQUALITY = 7;
+	private static final int LESS_THAN = 8;
+	private static final int GREATER_THAN = 9;
+	private static final int LT_EQ = 10;
+	private static final int GT_EQ = 11;
+	// Used in the error for a result type the operator doesn't support
+	private static final String[] OPERATION_NAMES = {"addition", "subtraction", "multiplication", "division", "modulus", "and", "or", "equality",
+			"less_than", "greater_than", "less_than_or_equal_to", "greater_than_or_equal_to"};
+	
+	private static final TokenType[] TYPE_PRIORITY = {TokenType.STRING_T, TokenType.DOUBLE_T, TokenType.FLOAT_T, TokenType.LONG_T, TokenType.INTEGER_T, TokenType.CHARACTER_T};
+	
+	private static final Operation[] OPERATIONS = new Operation[OPERATION_NAMES.length * TAG_TYPES.length * TAG_TYPES.length];
+	static {
+		for(int lt = 0; lt < TAG_TYPES.length; lt++) {
+			for(int rt = 0; rt < TAG_TYPES.length; rt++) {
+				TokenType result = resultType(TAG_TYPES[lt], TAG_TYPES[rt]);
+				for(int op = 0; op < OPERATION_NAMES.length; op++) {
+					OPERATIONS[(op * TAG_TYPES.length + lt) * TAG_TYPES.length + rt] = result != null ? operation(op, result, lt, rt) : incompatible(TAG_TYPES[lt], TAG_TYPES[rt]);
+				}
+			}
+		}
+	}
+	
 	// Ensures that the two objects have compatible types for the operation
 	// Returns the tokentype for the expected resulting data type from this operation
 	public static TokenType getResultType(Object left, Object right, int lineNum) {
 		TokenType lt = getObjType(left, lineNum);
 		TokenType rt = getObjType(right, lineNum);
-		TokenType[] typePriority = {TokenType.STRING_T, TokenType.DOUBLE_T, TokenType.FLOAT_T, TokenType.LONG_T, TokenType.INTEGER_T, TokenType.CHARACTER_T};
-		
+		TokenType result = resultType(lt, rt);
+		if(result == null) {
+			incompatible(lt, rt).apply(left, right, lineNum);
+		}
+		return result;
+	}
+	
+	// The type of the result of an operation on the two types, null if a boolean is used with anything other than a boolean
+	private static TokenType resultType(TokenType lt, TokenType rt) {
 		if(lt == rt) {
 			return lt;
 		}
-		else if(rt == TokenType.BOOLEAN_T && lt != TokenType.STRING) {
-			Interpreter.error("Cannot perform operation with boolean and "+lt, lineNum);
-		}
-		else if(lt == TokenType.BOOLEAN_T && rt != TokenType.STRING) {
-			Interpreter.error("Cannot perform operation with boolean and "+rt, lineNum);
+		else if(lt == TokenType.BOOLEAN_T || rt == TokenType.BOOLEAN_T) {
+			return null;
 		}
-		else {
-			for(TokenType t : typePriority) {
-				if(rt == t || lt == t) {
-					return t;
-				}
+		for(TokenType t : TYPE_PRIORITY) {
+			if(rt == t || lt == t) {
+				return t;
 			}
 		}
-		Interpreter.error("Failed to find result type between "+lt+" and "+rt, lineNum);
 		return null;
 	}
 	
 	public static TokenType getObjType(Object obj, int lineNum) {
+		return TAG_TYPES[tag(obj, lineNum)];
+	}
+	
+	private static int tag(Object obj, int lineNum) {
 		if(obj instanceof Integer) {
-			return TokenType.INTEGER_T;
+			return INTEGER;
 		} else if(obj instanceof Long) {
-			return TokenType.LONG_T;
+			return LONG;
 		} else if(obj instanceof Float) {
-			return TokenType.FLOAT_T;
+			return FLOAT;
 		} else if(obj instanceof Double) {
-			return TokenType.DOUBLE_T;
+			return DOUBLE;
 		} else if(obj instanceof Character) {
-			return TokenType.CHARACTER_T;
+			return CHARACTER;
 		} else if(obj instanceof String) {
-			return TokenType.STRING_T;
+			return STRING;
 		} else if(obj instanceof Boolean) {
-			return TokenType.BOOLEAN_T;
+			return BOOLEAN;
 		} else {
-			Interpreter.error("Unexpected type "+obj.getClass().getSimpleName(), lineNum);
-			return null;
+			Interpreter.error("Unexpected type "+Interpreter.typeName(obj), lineNum);
+			return -1;
 		}
 	}
 	
+	private static Object operation(int op, Object left, Object right, int lineNum) {
+		return OPERATIONS[(op * TAG_TYPES.length + tag(left, lineNum)) * TAG_TYPES.length + tag(right, lineNum)].apply(left, right, lineNum);
+	}
+	
 	public static Object add(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case STRING_T:
-			return (String) left + (String) right;
-		case DOUBLE_T:
-			return toDouble(left) + toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) + toFloat(right);
-		case LONG_T:
-			return toLong(left) + toLong(right);
-		case INTEGER_T:
-			return toInteger(left) + toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) + toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in addition expression", lineNum);
-			return null;
-		}
+		return operation(ADD, left, right, lineNum);
 	}
 	
 	public static Object sub(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) - toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) - toFloat(right);
-		case LONG_T:
-			return toLong(left) - toLong(right);
-		case INTEGER_T:
-			return toInteger(left) - toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) - toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in subtraction expression", lineNum);
-			return null;
-		}
+		return operation(SUB, left, right, lineNum);
 	}
 	
 	public static Object multiply(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) * toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) * toFloat(right);
-		case LONG_T:
-			return toLong(left) * toLong(right);
-		case INTEGER_T:
-			return toInteger(left) * toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) * toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in multiplication expression", lineNum);
-			return null;
-		}
+		return operation(MULTIPLY, left, right, lineNum);
 	}
 	
 	public static Object divide(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		if(Math.abs(toDouble(right)) == 0.0) {
-			Interpreter.error("Cannot divide by zero", lineNum);
-		}
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) / toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) / toFloat(right);
-		case LONG_T:
-			return toLong(left) / toLong(right);
-		case INTEGER_T:
-			return toInteger(left) / toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) / toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in division expression", lineNum);
-			return null;
-		}
+		return operation(DIVIDE, left, right, lineNum);
 	}
 	
 	public static Object modulus(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-				
-		if(Math.abs(toDouble(right)) == 0.0) {
-			Interpreter.error("Cannot divide by zero", lineNum);
-		}
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) % toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) % toFloat(right);
-		case LONG_T:
-			return toLong(left) % toLong(right);
-		case INTEGER_T:
-			return toInteger(left) % toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) % toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in modulus expression", lineNum);
-			return null;
-		}
+		return operation(MODULUS, left, right, lineNum);
 	}
 	
 	public static Object and(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case BOOLEAN_T:
-			return (Boolean) left && (Boolean) right;
-		default:
-			Interpreter.error("Cannot use type "+t+" in and expression", lineNum);
-			return null;
-		}
+		return operation(AND, left, right, lineNum);
 	}
 	
 	public static Object or(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case BOOLEAN_T:
-			return (Boolean) left || (Boolean) right;
-		default:
-			Interpreter.error("Cannot use type "+t+" in or expression", lineNum);
-			return null;
-		}
+		return operation(OR, left, right, lineNum);
 	}
 	
 	public static Object equality(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case STRING_T:
-			return (left.toString()).equals(right.toString());
-		case DOUBLE_T:
-			return toDouble(left) == toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) == toFloat(right);
-		case LONG_T:
-			return toLong(left) == toLong(right);
-		case INTEGER_T:
-			return toInteger(left) == toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) == toCharacter(right);
-		case BOOLEAN_T:
-			return ((Boolean) left).equals((Boolean) right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in equality expression", lineNum);
-			return null;
-		}
+		return operation(EQUALITY, left, right, lineNum);
 	}
 	
 	public static Object less_than(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) < toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) < toFloat(right);
-		case LONG_T:
-			return toLong(left) < toLong(right);
-		case INTEGER_T:
-			return toInteger(left) < toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) < toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in less_than expression", lineNum);
-			return null;
-		}
+		return operation(LESS_THAN, left, right, lineNum);
 	}
 	
 	public static Object greater_than(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) > toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) > toFloat(right);
-		case LONG_T:
-			return toLong(left) > toLong(right);
-		case INTEGER_T:
-			return toInteger(left) > toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) > toCharacter(right);
-		default:
-			Interpreter.error("Cannot use type "+t+" in greater_than expression", lineNum);
-			return null;
-		}
+		return operation(GREATER_THAN, left, right, lineNum);
 	}
 	
 	public static Object not_eq(Object left, Object right, int lineNum) {
@@ -261,45 +161,458 @@ public class OperationPerformer {
 	}
 	
 	public static Object lt_eq(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) <= toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) <= toFloat(right);
-		case LONG_T:
-			return toLong(left) <= toLong(right);
-		case INTEGER_T:
-			return toInteger(left) <= toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) <= toCharacter(right);
+		return operation(LT_EQ, left, right, lineNum);
+	}
+	
+	public static Object gt_eq(Object left, Object right, int lineNum) {
+		return operation(GT_EQ, left, right, lineNum);
+	}
+	
+	// The operation for one entry of the table, lt and rt are the operands' tags
+	private static Operation operation(int op, TokenType result, int lt, int rt) {
+		// The number tags come before STRING and BOOLEAN
+		if(lt == rt && lt <= CHARACTER && op != AND && op != OR) {
+			return sameType(op, lt);
+		}
+		switch(op) {
+		case ADD:
+			switch(result) {
+			case STRING_T:
+				return (left, right, lineNum) -> (String) left + (String) right;
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) + doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) + floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) + longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) + intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) + charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
+		case SUB:
+			switch(result) {
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) - doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) - floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) - longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) - intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) - charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
+		case MULTIPLY:
+			switch(result) {
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) * doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) * floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) * longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) * intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) * charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
+		case DIVIDE:
+			switch(result) {
+			case DOUBLE_T:
+				return divisorChecked(rt, (left, right, lineNum) -> doubleValue(left, lt) / doubleValue(right, rt));
+			case FLOAT_T:
+				return divisorChecked(rt, (left, right, lineNum) -> floatValue(left, lt) / floatValue(right, rt));
+			case LONG_T:
+				return divisorChecked(rt, (left, right, lineNum) -> longValue(left, lt) / longValue(right, rt));
+			case INTEGER_T:
+				return divisorChecked(rt, (left, right, lineNum) -> intValue(left, lt) / intValue(right, rt));
+			case CHARACTER_T:
+				return divisorChecked(rt, (left, right, lineNum) -> charValue(left, lt) / charValue(right, rt));
+			default:
+				return divisorChecked(rt, unsupported(op, result));
+			}
+		case MODULUS:
+			switch(result) {
+			case DOUBLE_T:
+				return divisorChecked(rt, (left, right, lineNum) -> doubleValue(left, lt) % doubleValue(right, rt));
+			case FLOAT_T:
+				return divisorChecked(rt, (left, right, lineNum) -> floatValue(left, lt) % floatValue(right, rt));
+			case LONG_T:
+				return divisorChecked(rt, (left, right, lineNum) -> longValue(left, lt) % longValue(right, rt));
+			case INTEGER_T:
+				return divisorChecked(rt, (left, right, lineNum) -> intValue(left, lt) % intValue(right, rt));
+			case CHARACTER_T:
+				return divisorChecked(rt, (left, right, lineNum) -> charValue(left, lt) % charValue(right, rt));
+			default:
+				return divisorChecked(rt, unsupported(op, result));
+			}
+		case AND:
+			if(result == TokenType.BOOLEAN_T) {
+				return (left, right, lineNum) -> (Boolean) left && (Boolean) right;
+			}
+			return unsupported(op, result);
+		case OR:
+			if(result == TokenType.BOOLEAN_T) {
+				return (left, right, lineNum) -> (Boolean) left || (Boolean) right;
+			}
+			return unsupported(op, result);
+		case EQUALITY:
+			switch(result) {
+			case STRING_T:
+				return (left, right, lineNum) -> (left.toString()).equals(right.toString());
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) == doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) == floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) == longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) == intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) == charValue(right, rt);
+			case BOOLEAN_T:
+				return (left, right, lineNum) -> ((Boolean) left).equals((Boolean) right);
+			default:
+				return unsupported(op, result);
+			}
+		case LESS_THAN:
+			switch(result) {
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) < doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) < floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) < longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) < intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) < charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
+		case GREATER_THAN:
+			switch(result) {
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) > doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) > floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) > longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) > intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) > charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
+		case LT_EQ:
+			switch(result) {
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) <= doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) <= floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) <= longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) <= intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) <= charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
+		case GT_EQ:
+			switch(result) {
+			case DOUBLE_T:
+				return (left, right, lineNum) -> doubleValue(left, lt) >= doubleValue(right, rt);
+			case FLOAT_T:
+				return (left, right, lineNum) -> floatValue(left, lt) >= floatValue(right, rt);
+			case LONG_T:
+				return (left, right, lineNum) -> longValue(left, lt) >= longValue(right, rt);
+			case INTEGER_T:
+				return (left, right, lineNum) -> intValue(left, lt) >= intValue(right, rt);
+			case CHARACTER_T:
+				return (left, right, lineNum) -> charValue(left, lt) >= charValue(right, rt);
+			default:
+				return unsupported(op, result);
+			}
 		default:
-			Interpreter.error("Cannot use type "+t+" in less_than_or_equal_to expression", lineNum);
-			return null;
+			throw new RuntimeException("Unknown operation "+op);
 		}
 	}
 	
-	public static Object gt_eq(Object left, Object right, int lineNum) {
-		TokenType t = getResultType(left, right, lineNum);
-		
-		switch(t) {
-		case DOUBLE_T:
-			return toDouble(left) >= toDouble(right);
-		case FLOAT_T:
-			return toFloat(left) >= toFloat(right);
-		case LONG_T:
-			return toLong(left) >= toLong(right);
-		case INTEGER_T:
-			return toInteger(left) >= toInteger(right);
-		case CHARACTER_T:
-			return toCharacter(left) >= toCharacter(right);
+	// Like every other operation on two characters, the arithmetic ones result in an int
+	private static Operation sameType(int op, int tag) {
+		switch(op) {
+		case ADD:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left + (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left + (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left + (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left + (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left + (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case SUB:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left - (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left - (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left - (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left - (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left - (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case MULTIPLY:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left * (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left * (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left * (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left * (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left * (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case DIVIDE:
+			switch(tag) {
+			case INTEGER:
+				return divisorChecked(tag, (left, right, lineNum) -> (int) left / (int) right);
+			case LONG:
+				return divisorChecked(tag, (left, right, lineNum) -> (long) left / (long) right);
+			case FLOAT:
+				return divisorChecked(tag, (left, right, lineNum) -> (float) left / (float) right);
+			case DOUBLE:
+				return divisorChecked(tag, (left, right, lineNum) -> (double) left / (double) right);
+			case CHARACTER:
+				return divisorChecked(tag, (left, right, lineNum) -> (char) left / (char) right);
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case MODULUS:
+			switch(tag) {
+			case INTEGER:
+				return divisorChecked(tag, (left, right, lineNum) -> (int) left % (int) right);
+			case LONG:
+				return divisorChecked(tag, (left, right, lineNum) -> (long) left % (long) right);
+			case FLOAT:
+				return divisorChecked(tag, (left, right, lineNum) -> (float) left % (float) right);
+			case DOUBLE:
+				return divisorChecked(tag, (left, right, lineNum) -> (double) left % (double) right);
+			case CHARACTER:
+				return divisorChecked(tag, (left, right, lineNum) -> (char) left % (char) right);
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case EQUALITY:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left == (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left == (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left == (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left == (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left == (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case LESS_THAN:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left < (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left < (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left < (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left < (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left < (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case GREATER_THAN:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left > (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left > (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left > (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left > (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left > (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case LT_EQ:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left <= (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left <= (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left <= (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left <= (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left <= (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
+		case GT_EQ:
+			switch(tag) {
+			case INTEGER:
+				return (left, right, lineNum) -> (int) left >= (int) right;
+			case LONG:
+				return (left, right, lineNum) -> (long) left >= (long) right;
+			case FLOAT:
+				return (left, right, lineNum) -> (float) left >= (float) right;
+			case DOUBLE:
+				return (left, right, lineNum) -> (double) left >= (double) right;
+			case CHARACTER:
+				return (left, right, lineNum) -> (char) left >= (char) right;
+			default:
+				throw new RuntimeException("Unknown number type "+tag);
+			}
 		default:
-			Interpreter.error("Cannot use type "+t+" in greater_than_or_equal_to expression", lineNum);
+			throw new RuntimeException("Unknown operation "+op);
+		}
+	}
+	
+	// Both types are known when the table is made, so the error is too
+	private static Operation incompatible(TokenType lt, TokenType rt) {
+		String msg;
+		if(rt == TokenType.BOOLEAN_T) {
+			msg = "Cannot perform operation with boolean and "+lt;
+		}
+		else if(lt == TokenType.BOOLEAN_T) {
+			msg = "Cannot perform operation with boolean and "+rt;
+		}
+		else {
+			msg = "Failed to find result type between "+lt+" and "+rt;
+		}
+		return (left, right, lineNum) -> {
+			Interpreter.error(msg, lineNum);
 			return null;
+		};
+	}
+	
+	private static Operation unsupported(int op, TokenType result) {
+		String msg = "Cannot use type "+result+" in "+OPERATION_NAMES[op]+" expression";
+		return (left, right, lineNum) -> {
+			Interpreter.error(msg, lineNum);
+			return null;
+		};
+	}
+	
+	// Division and modulus check for zero before the operation, even when the result type can't be divided
+	private static Operation divisorChecked(int rt, Operation operation) {
+		return (left, right, lineNum) -> {
+			if(doubleValue(right, rt) == 0.0) {
+				Interpreter.error("Cannot divide by zero", lineNum);
+			}
+			return operation.apply(left, right, lineNum);
+		};
+	}
+	
+	// Conversions from an operand whose tag is known, the same as the to methods below without testing the type first
+	private static double doubleValue(Object obj, int tag) {
+		switch(tag) {
+		case INTEGER:
+			return (Integer) obj;
+		case LONG:
+			return (Long) obj;
+		case FLOAT:
+			return (Float) obj;
+		case DOUBLE:
+			return (Double) obj;
+		case CHARACTER:
+			return (Character) obj;
+		default:
+			return toDouble(obj);
 		}
 	}
 	
+	private static float floatValue(Object obj, int tag) {
+		switch(tag) {
+		case INTEGER:
+			return (Integer) obj;
+		case LONG:
+			return (Long) obj;
+		case FLOAT:
+			return (Float) obj;
+		case DOUBLE:
+			return ((Double) obj).floatValue();
+		case CHARACTER:
+			return (Character) obj;
+		default:
+			return toFloat(obj);
+		}
+	}
+	
+	private static long longValue(Object obj, int tag) {
+		switch(tag) {
+		case INTEGER:
+			return (Integer) obj;
+		case LONG:
+			return (Long) obj;
+		case FLOAT:
+			return ((Float) obj).longValue();
+		case DOUBLE:
+			return ((Double) obj).longValue();
+		case CHARACTER:
+			return (Character) obj;
+		default:
+			return toLong(obj);
+		}
+	}
+	
+	private static int intValue(Object obj, int tag) {
+		switch(tag) {
+		case INTEGER:
+			return (Integer) obj;
+		case LONG:
+			return ((Long) obj).intValue();
+		case FLOAT:
+			return ((Float) obj).intValue();
+		case DOUBLE:
+			return ((Double) obj).intValue();
+		case CHARACTER:
+			return (Character) obj;
+		default:
+			return toInteger(obj);
+		}
+	}
+	
+	private static char charValue(Object obj, int tag) {
+		return (char) intValue(obj, tag);
+	}
+	
 	public static double toDouble(Object obj) {
 		if(obj instanceof Double) {
 			return (double) obj;
@@ -317,7 +630,7 @@ public class OperationPerformer {
 			return ((Integer)((Character) obj + 0)).doubleValue();
 		}
 		else {
-			throw new RuntimeException("Failed to convert "+obj.getClass().getSimpleName()+" to a double");
+			throw new RuntimeException("Failed to convert "+Interpreter.typeName(obj)+" to a double");
 		}
 	}
 	
@@ -338,7 +651,7 @@ public class OperationPerformer {
 			return ((Integer)((Character) obj + 0)).floatValue();
 		}
 		else {
-			throw new RuntimeException("Failed to convert "+obj.getClass().getSimpleName()+" to a float");
+			throw new RuntimeException("Failed to convert "+Interpreter.typeName(obj)+" to a float");
 		}
 	}
 	
@@ -359,7 +672,7 @@ public class OperationPerformer {
 			return (Character) obj + 0L;
 		}
 		else {
-			throw new RuntimeException("Failed to convert "+obj.getClass().getSimpleName()+" to a long");
+			throw new RuntimeException("Failed to convert "+Interpreter.typeName(obj)+" to a long");
 		}
 	}
 	
@@ -380,7 +693,7 @@ public class OperationPerformer {
 			return ((Character) obj) + 0;
 		}
 		else {
-			throw new RuntimeException("Failed to convert "+obj.getClass().getSimpleName()+" to an integer");
+			throw new RuntimeException("Failed to convert "+Interpreter.typeName(obj)+" to an integer");
 		}
 	}
 	
@@ -0,0 +1,231 @@
+package Sulfur;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Runs after the parser and before the Resolver and simplifies expressions ahead of time so they aren't recomputed every time they run.
+ * Operations and casts on literals are folded into a single literal, groupings are removed since they only mattered for parsing,
+ * and & or | whose left side is a literal that decides the result are replaced by that literal.
+ * Operations like x*1 and x+0 are removed when x is known to be a number of a type that the operation would not change.
+ *
+ * Folding uses the same methods the Interpreter does, so the folded value is exactly what the program would have computed.
+ * Anything that would cause an error (like 1/0) is left alone so the error still happens when, and only if, that code runs.
+ * The tree is rebuilt rather than changed in place, so the parser's tree can still be run unoptimized to compare results.
+ */
+public class Optimizer {
+
+	// Numeric types in the order OperationPerformer promotes them
+	private static final TokenType[] numericPriority = {TokenType.DOUBLE_T, TokenType.FLOAT_T, TokenType.LONG_T, TokenType.INTEGER_T};
+
+	public static Expr.StatementBlock optimize(Expr.StatementBlock program) {
+		Expr.StatementBlock optimized = block(program);
+		optimized.symbols = program.symbols;
+		return optimized;
+	}
+
+	private static Expr.StatementBlock block(Expr.StatementBlock block) {
+		return new Expr.StatementBlock(optimizeAll(block.statements));
+	}
+
+	private static ArrayList<Expr> optimizeAll(List<Expr> exprs) {
+		ArrayList<Expr> optimized = new ArrayList<Expr>(exprs.size());
+		for(Expr e : exprs) {
+			optimized.add(optimize(e));
+		}
+		return optimized;
+	}
+
+	private static Expr optimize(Expr expr) {
+		if(expr instanceof Expr.StatementBlock) {
+			return block((Expr.StatementBlock) expr);
+		}
+		else if(expr instanceof Expr.FunctionCall) {
+			Expr.FunctionCall call = (Expr.FunctionCall) expr;
+			return new Expr.FunctionCall(call.funcIdTok, optimizeAll(call.arguments));
+		}
+		else if(expr instanceof Expr.Execute) {
+			Expr.Execute exec = (Expr.Execute) expr;
+			return new Expr.Execute(exec.execTok, (Expr.FunctionCall) optimize(exec.call));
+		}
+		else if(expr instanceof Expr.ArrayMethodCall) {
+			Expr.ArrayMethodCall call = (Expr.ArrayMethodCall) expr;
+			return new Expr.ArrayMethodCall(call.array, call.methodTok, call.method, optimizeAll(call.arguments));
+		}
+		else if(expr instanceof Expr.PrintStmt) {
+			Expr.PrintStmt print = (Expr.PrintStmt) expr;
+			return new Expr.PrintStmt(optimizeAll(print.arguments), print.lineNum);
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			Expr.FunctionDef func = (Expr.FunctionDef) expr;
+			return new Expr.FunctionDef(func.funcIdTok, func.returnType, func.parameters, block(func.funcBlock));
+		}
+		else if(expr instanceof Expr.ReturnStmt) {
+			Expr.ReturnStmt ret = (Expr.ReturnStmt) expr;
+			return new Expr.ReturnStmt(optimize(ret.returnExp), ret.lineNum);
+		}
+		else if(expr instanceof Expr.WhileStatement) {
+			Expr.WhileStatement loop = (Expr.WhileStatement) expr;
+			return new Expr.WhileStatement(optimize(loop.condition), block(loop.block), loop.lineNum);
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			Expr.IfStatement ifStmt = (Expr.IfStatement) expr;
+			ArrayList<Expr.ConditionalBlock> ifBlocks = new ArrayList<Expr.ConditionalBlock>();
+			for(Expr.ConditionalBlock ifBlock : ifStmt.conditionalBlocks) {
+				ifBlocks.add(new Expr.ConditionalBlock(optimize(ifBlock.condition), block(ifBlock.body), ifBlock.lineNum));
+			}
+			return new Expr.IfStatement(ifBlocks, ifStmt.elseBlock != null ? block(ifStmt.elseBlock) : null);
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			return binaryOp((Expr.BinaryOp) expr);
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			return unaryOp((Expr.UnaryOp) expr);
+		}
+		else if(expr instanceof Expr.ValueArray) {
+			return new Expr.ValueArray(optimizeAll(((Expr.ValueArray) expr).value));
+		}
+		else if(expr instanceof Expr.Assign) {
+			Expr.Assign assign = (Expr.Assign) expr;
+			return new Expr.Assign(assign.varIdTok, assign.dataTypeTok, optimize(assign.value), assign.arrayDegree);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return optimize(((Expr.Grouping) expr).expression);
+		}
+		// Literals, variables, awaits (which only take a variable), and flow control statements can't be simplified
+		return expr;
+	}
+
+	private static Expr binaryOp(Expr.BinaryOp expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		TokenType operator = expr.operator.type;
+
+		if(left instanceof Expr.Literal && Interpreter.isLogical(operator) && Interpreter.shortCircuits(operator, ((Expr.Literal) left).value)) {
+			return left;
+		}
+		if(left instanceof Expr.Literal && right instanceof Expr.Literal) {
+			try {
+				return new Expr.Literal(Interpreter.performBinaryOp(operator, ((Expr.Literal) left).value, ((Expr.Literal) right).value, expr.operator.line));
+			} catch(RuntimeException e) {
+				// Leave it for the Interpreter to report
+			}
+		}
+
+		// x*1, 1*x, x/1, x+0, 0+x, and x-0
+		// These are only removed if x is a number and the result would have the same type as x, otherwise the operation could change its type
+		// Adding zero isn't done for floating point numbers since -0.0 + 0 is 0.0
+		TokenType leftType = numericType(left);
+		TokenType rightType = numericType(right);
+		switch(operator) {
+		case MULTIPLY:
+			if(isLiteral(right, 1) && keepsType(leftType, rightType)) return left;
+			if(isLiteral(left, 1) && keepsType(rightType, leftType)) return right;
+			break;
+		case DIVIDE:
+			if(isLiteral(right, 1) && keepsType(leftType, rightType)) return left;
+			break;
+		case ADD:
+			if(isLiteral(right, 0) && isIntegral(leftType) && keepsType(leftType, rightType)) return left;
+			if(isLiteral(left, 0) && isIntegral(rightType) && keepsType(rightType, leftType)) return right;
+			break;
+		case SUB:
+			if(isLiteral(right, 0) && keepsType(leftType, rightType)) return left;
+			break;
+		default:
+			break;
+		}
+
+		if(left == expr.left && right == expr.right) {
+			return expr;
+		}
+		return new Expr.BinaryOp(left, expr.operator, right);
+	}
+
+	private static Expr unaryOp(Expr.UnaryOp expr) {
+		Expr right = optimize(expr.right);
+		if(right instanceof Expr.Literal) {
+			try {
+				return new Expr.Literal(Interpreter.performUnaryOp(expr.operator.type, ((Expr.Literal) right).value, expr.operator.line));
+			} catch(RuntimeException e) {
+				// Leave it for the Interpreter to report
+			}
+		}
+
+		if(right == expr.right) {
+			return expr;
+		}
+		return new Expr.UnaryOp(expr.operator, right);
+	}
+
+	// The type an expression will always result in if it is a number and can be worked out ahead of time, otherwise null
+	// Characters are left out since any arithmetic on them results in an integer
+	private static TokenType numericType(Expr expr) {
+		if(expr instanceof Expr.Literal) {
+			Object value = ((Expr.Literal) expr).value;
+			if(value instanceof Double) return TokenType.DOUBLE_T;
+			if(value instanceof Float) return TokenType.FLOAT_T;
+			if(value instanceof Long) return TokenType.LONG_T;
+			if(value instanceof Integer) return TokenType.INTEGER_T;
+			return null;
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			Expr.UnaryOp unOp = (Expr.UnaryOp) expr;
+			switch(unOp.operator.type) {
+			// Casts always result in their type or an error
+			case DOUBLE_T:
+			case FLOAT_T:
+			case LONG_T:
+			case INTEGER_T:
+				return unOp.operator.type;
+			case ADD:
+			case SUB:
+				return numericType(unOp.right);
+			default:
+				return null;
+			}
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			Expr.BinaryOp binOp = (Expr.BinaryOp) expr;
+			switch(binOp.operator.type) {
+			case ADD:
+			case SUB:
+			case MULTIPLY:
+			case DIVIDE:
+			case MODULUS:
+				return promote(numericType(binOp.left), numericType(binOp.right));
+			default:
+				return null;
+			}
+		}
+		return null;
+	}
+
+	// The type OperationPerformer would give an operation on two numbers
+	private static TokenType promote(TokenType a, TokenType b) {
+		if(a == null || b == null) {
+			return null;
+		}
+		for(TokenType t : numericPriority) {
+			if(a == t || b == t) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	// Whether an operation between a value of type valueType and a literal of type literalType results in valueType
+	private static boolean keepsType(TokenType valueType, TokenType literalType) {
+		return valueType != null && promote(valueType, literalType) == valueType;
+	}
+
+	private static boolean isIntegral(TokenType type) {
+		return type == TokenType.INTEGER_T || type == TokenType.LONG_T;
+	}
+
+	private static boolean isLiteral(Expr expr, int n) {
+		if(!(expr instanceof Expr.Literal) || numericType(expr) == null) {
+			return false;
+		}
+		return OperationPerformer.toDouble(((Expr.Literal) expr).value) == n;
+	}
+}
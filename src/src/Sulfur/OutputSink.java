@@ -0,0 +1,170 @@
+package Sulfur;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Where P() sends its output.
+ * Printed values are collected in a large buffer which is written out in one go when it fills up,
+ * instead of making a synchronized write to System.out for every value.
+ * Numbers, characters, and booleans are appended straight into the buffer without being turned into a String first.
+ *
+ * Nothing shows up until the buffer is flushed, so every engine flushes when the program ends (normally or with an error) and before Q exits.
+ * Printing and flushing are synchronized since tasks started with X can print at the same time.
+ */
+public abstract class OutputSink {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+	private final CharsetEncoder encoder;
+	private final ByteBuffer bytes;
+
+	protected OutputSink(Charset charset, ByteBuffer bytes) {
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = bytes;
+	}
+
+	// Sink for standard output, uses whatever System.out currently is
+	public static OutputSink standard() {
+		return new StreamSink(System.out);
+	}
+
+	// Prints a value exactly like System.out.print would
+	public synchronized void print(Object value) {
+		if(value instanceof Integer) {
+			buffer.append((int) (Integer) value);
+		}
+		else if(value instanceof String) {
+			buffer.append((String) value);
+		}
+		else if(value instanceof Character) {
+			buffer.append((char) (Character) value);
+		}
+		else if(value instanceof Double) {
+			buffer.append((double) (Double) value);
+		}
+		else if(value instanceof Long) {
+			buffer.append((long) (Long) value);
+		}
+		else if(value instanceof Boolean) {
+			buffer.append((boolean) (Boolean) value);
+		}
+		else if(value instanceof Float) {
+			buffer.append((float) (Float) value);
+		}
+		else {
+			buffer.append(value);
+		}
+		if(buffer.length() >= BUFFER_SIZE) {
+			flush();
+		}
+	}
+
+	// Writes out everything that has been printed so far
+	public synchronized void flush() {
+		try {
+			CharBuffer chars = CharBuffer.wrap(buffer);
+			encoder.reset();
+			// The byte buffer is written out every time it fills up
+			CoderResult result;
+			do {
+				result = encoder.encode(chars, bytes, true);
+				writeBytes();
+			} while(result.isOverflow());
+			encoder.flush(bytes);
+			writeBytes();
+			buffer.setLength(0);
+			flushTarget();
+		} catch(IOException e) {
+			throw new RuntimeException("Failed to write output: "+e.getMessage());
+		}
+	}
+
+	private void writeBytes() throws IOException {
+		bytes.flip();
+		write(bytes);
+		bytes.clear();
+	}
+
+	// Flushes and releases whatever the sink writes to
+	public void close() {
+		flush();
+	}
+
+	// Writes all of the remaining bytes
+	protected abstract void write(ByteBuffer bytes) throws IOException;
+
+	protected abstract void flushTarget() throws IOException;
+
+	// Writes to an OutputStream like System.out, which is flushed but never closed
+	public static class StreamSink extends OutputSink {
+		private final OutputStream out;
+
+		public StreamSink(PrintStream out) {
+			this((OutputStream) out, Charset.defaultCharset());
+		}
+
+		public StreamSink(OutputStream out, Charset charset) {
+			super(charset, ByteBuffer.allocate(BUFFER_SIZE));
+			this.out = out;
+		}
+
+		@Override
+		protected void write(ByteBuffer bytes) throws IOException {
+			out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			bytes.position(bytes.limit());
+		}
+
+		@Override
+		protected void flushTarget() throws IOException {
+			out.flush();
+		}
+	}
+
+	// Writes straight to a file through a FileChannel and a direct buffer, replacing the file if it already exists
+	public static class FileSink extends OutputSink {
+		private final FileChannel channel;
+
+		public FileSink(Path path) throws IOException {
+			this(path, Charset.defaultCharset());
+		}
+
+		public FileSink(Path path, Charset charset) throws IOException {
+			super(charset, ByteBuffer.allocateDirect(BUFFER_SIZE));
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		@Override
+		protected void write(ByteBuffer bytes) throws IOException {
+			while(bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+
+		@Override
+		protected void flushTarget() {
+			// The channel has no buffer of its own
+		}
+
+		@Override
+		public void close() {
+			flush();
+			try {
+				channel.close();
+			} catch(IOException e) {
+				throw new RuntimeException("Failed to close output file: "+e.getMessage());
+			}
+		}
+	}
+}
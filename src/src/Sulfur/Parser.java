@@ -1,27 +1,27 @@
 package Sulfur;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Map.Entry;
 
 
+// Reads tokens straight out of the TokenBuffer by index, Token objects are only made for the tokens the tree keeps
 public class Parser {
-	private RuntimeException error(Token token, String message) {
-		throw new RuntimeException("Error on token "+token.type+" at line "+token.line+": "+message);
+	private RuntimeException error(int token, String message) {
+		throw new RuntimeException("Error on token "+tokens.type(token)+" at line "+tokens.line(token)+": "+message);
 	}
 
 	// tokens
-	private final List<Token> tokens;
+	private final TokenBuffer tokens;
 	private int current = 0;
 
-	Parser(List<Token> tokens) {
+	Parser(TokenBuffer tokens) {
 		this.tokens = tokens;
 	}
 	
-	public Expr parse() {
-		Expr exp = block();
-		if(current < tokens.size() && peek().type != TokenType.EOF) {
-			error(peek(),"Invalid statement");
+	public Expr.StatementBlock parse() {
+		Expr.StatementBlock exp = block();
+		if(current < tokens.size() && peekType() != TokenType.EOF) {
+			error(current,"Invalid statement");
 		}
+		exp.symbols = tokens.symbols();
 		return exp;
 	}
 	
@@ -37,12 +37,15 @@ public class Parser {
 			} else if(match(TokenType.IF)) {
 				statements.add(ifStmt());
 			} else if(match(TokenType.IDENTIFIER, TokenType.PRINT)) {
-				if(peek().type == TokenType.PROPERTY_ACCESSOR)
+				if(peekType() == TokenType.PROPERTY_ACCESSOR)
 					statements.add(arrayFunctionCall());
 				else
 					statements.add(funcCall());
+			} else if(match(TokenType.EXECUTE)) {
+				statements.add(execute());
 			} else if(match(TokenType.RETURN)) {
-				statements.add(new Expr.ReturnStmt(comparison1()));
+				int lineNum = previousLine();
+				statements.add(new Expr.ReturnStmt(comparison1(), lineNum));
 			} else if(match(TokenType.JUMP_OUT, TokenType.KONTINUE, TokenType.QUIT)) {
 				statements.add(new Expr.FlowControlStmt(previous()));
 			} else {
@@ -56,7 +59,8 @@ public class Parser {
 	// ASSIGN IDENTIFIER <type> VALUE <term>
 	// ASSIGN IDENTIFIER FUNCTION <return_type>? VALUE LEFT_PAREN <arguments>? RIGHT_PAREN YET <block> ZENITH
 	private Expr assignment() {
-		Token idTok = consume(TokenType.IDENTIFIER);
+		consume(TokenType.IDENTIFIER);
+		Token idTok = previous();
 		int arrayDegree = 0;
 		
 		if(match(TokenType.FUNCTION)) {
@@ -64,7 +68,7 @@ public class Parser {
 		}
 		
 		if(!match(TokenType.dataTypeTokens)) {
-			error(peek(),"Expected variable data type");
+			error(current,"Expected variable data type");
 		}
 		Token dataType = previous();
 		
@@ -82,12 +86,8 @@ public class Parser {
 	// Called by the assignment() function and starts pointing to the <return_type>
 	// ASSIGN IDENTIFIER FUNCTION <return_type>? VALUE LEFT_PAREN <arguments>? RIGHT_PAREN YET <block> ZENITH
 	private Expr.FunctionDef functionDef(Token idTok) {
-		Token returnType = peek();
-		
-		if(!match(TokenType.dataTypeTokens)) {
-			// No return type means null
-			returnType = null;
-		}
+		// No return type means null
+		Token returnType = match(TokenType.dataTypeTokens) ? previous() : null;
 		consume(TokenType.VALUE);
 		consume(TokenType.LEFT_PAREN);
 		
@@ -99,7 +99,7 @@ public class Parser {
 			}
 			
 			if(!match(TokenType.dataTypeTokens)) {
-				error(peek(),"Expected data type");
+				error(current,"Expected data type");
 			}
 			Token dataType = previous();
 			int arrayDegree = 0;
@@ -122,7 +122,8 @@ public class Parser {
 	// WHILE <condition> YET <block> ZENITH
 	private Expr.WhileStatement whileStmt() {
 		Expr condition = comparison1();
-		int lineNum = consume(TokenType.YET).line;
+		consume(TokenType.YET);
+		int lineNum = previousLine();
 		
 		Expr.StatementBlock innerBlock = block();
 		
@@ -141,7 +142,8 @@ public class Parser {
 		
 		// Add first if to list
 		Expr condition = comparison1();
-		int lineNum = consume(TokenType.YET).line;
+		consume(TokenType.YET);
+		int lineNum = previousLine();
 		
 		Expr.StatementBlock ifBlock = block();
 		conditionalBlocks.add(new Expr.ConditionalBlock(condition, ifBlock, lineNum));
@@ -154,7 +156,8 @@ public class Parser {
 			//Add else-if to conditionals list
 			if(match(TokenType.IF)) {
 				condition = comparison1();
-				lineNum = consume(TokenType.YET).line;
+				consume(TokenType.YET);
+				lineNum = previousLine();
 				
 				ifBlock = block();
 				conditionalBlocks.add(new Expr.ConditionalBlock(condition, ifBlock, lineNum));
@@ -171,9 +174,19 @@ public class Parser {
 		
 		return new Expr.IfStatement(conditionalBlocks, elseBlock);
 	}
+	// EXECUTE <identifier> (<arg1>, <arg2>, <arg3>...)
+	private Expr execute() {
+		Token execTok = previous();
+		consume(TokenType.IDENTIFIER, "Expect function call after X.");
+		if(peekType() != TokenType.LEFT_PAREN) {
+			error(current, "Expect function call after X.");
+		}
+		return new Expr.Execute(execTok, (Expr.FunctionCall) funcCall());
+	}
+	
 	// <identifier> (<arg1>, <arg2>, <arg3>...)
 	private Expr funcCall() {
-		Token funcID = previous();
+		int funcID = current - 1;
 		ArrayList<Expr> arguments = new ArrayList<Expr>();
 		consume(TokenType.LEFT_PAREN);
 		
@@ -188,27 +201,36 @@ public class Parser {
 			firstParam = false;
 		}
 		
-		if(funcID.type == TokenType.PRINT)
-			return new Expr.PrintStmt(arguments);
+		if(tokens.type(funcID) == TokenType.PRINT)
+			return new Expr.PrintStmt(arguments, tokens.line(funcID));
 		
-		return new Expr.FunctionCall(funcID, arguments);
+		return new Expr.FunctionCall(tokens.token(funcID), arguments);
 	}
 	
 	//<arr-id>~<func-name>(<arg1>, <arg2>, <arg3>...)
 	//EX: arr~length()
 	//    arr~get(0)
-	//    arr~set(0)
+	//    arr~set(0, 5)    set takes an index and a value
+	//    task~await()     waits for a task, which is not an array method
 	private Expr arrayFunctionCall() {		
 		ArrayList<Expr> arguments = new ArrayList<Expr>();
-		Token arrIDTok = previous();
-		arguments.add(new Expr.VariableAccess(arrIDTok));
+		Expr array = new Expr.VariableAccess(previous());
 		
 		consume(TokenType.PROPERTY_ACCESSOR);
-		Token funcTok = consume(TokenType.IDENTIFIER);
+		consume(TokenType.IDENTIFIER);
+		Token funcTok = previous();
 		
-		//Switch function name to include ArrayList so it doesn't conflict with similar user created functions
-		//User functions also cannot have capital letters so there should be no conflicts
-		Token arrayFuncTok = new Token(funcTok.type, "ArrayList_"+((String) funcTok.value), funcTok.line);
+		if("await".equals(funcTok.value)) {
+			consume(TokenType.LEFT_PAREN);
+			consume(TokenType.RIGHT_PAREN);
+			return new Expr.Await(array, funcTok);
+		}
+		
+		//Array methods are looked up now so a misspelled one is reported before the program runs
+		ArrayMethod method = ArrayMethod.getArrayMethod((String) funcTok.value);
+		if(method == null) {
+			error(current - 1, "Unrecognized array method "+funcTok.value);
+		}
 		consume(TokenType.LEFT_PAREN);
 		
 		boolean firstParam = true;
@@ -222,7 +244,7 @@ public class Parser {
 			firstParam = false;
 		}
 		
-		return new Expr.FunctionCall(arrayFuncTok, arguments);
+		return new Expr.ArrayMethodCall(array, funcTok, method, arguments);
 	}
 	
 	// Rule: comparison1 → comparison2 ( "|" comparison2 )*
@@ -305,7 +327,7 @@ public class Parser {
 	private Expr primary() {
 
 		if (match(TokenType.dataTokens)) {
-			return new Expr.Literal(previous().value);
+			return new Expr.Literal(tokens.value(current - 1));
 		}
 		
 		if(match(TokenType.LEFT_BRACE)) {
@@ -325,11 +347,15 @@ public class Parser {
 			return new Expr.ValueArray(list);
 		}
 		
+		if (match(TokenType.EXECUTE)) {
+			return execute();
+		}
+		
 		if (match(TokenType.IDENTIFIER)) {
-			if(peek().type == TokenType.LEFT_PAREN) {
+			if(peekType() == TokenType.LEFT_PAREN) {
 				return funcCall();
 			}
-			else if(peek().type == TokenType.PROPERTY_ACCESSOR) {
+			else if(peekType() == TokenType.PROPERTY_ACCESSOR) {
 				return arrayFunctionCall();
 			}
 			return new Expr.VariableAccess(previous());
@@ -347,15 +373,19 @@ public class Parser {
 			return new Expr.Grouping(expr);
 		}
 
-		throw error(peek(), "Expect expression.");
+		throw error(current, "Expect expression.");
 
 	}
 	
 	// > match token types
+	// The current token's type is only read once no matter how many types are checked
 	private boolean match(TokenType... types) {
+		TokenType next = peekType();
+		if (next == TokenType.EOF)
+			return false;
 		for (TokenType type : types) {
-			if (check(type)) {
-				advance();
+			if (next == type) {
+				current++;
 				return true;
 			}
 		}
@@ -367,45 +397,47 @@ public class Parser {
 	private boolean check(TokenType type) {
 		if (isAtEnd())
 			return false;
-		return peek().type == type;
+		return peekType() == type;
 	}
 
 	// > consume
-	private Token consume(TokenType type) {
-		return consume(type, null);
+	private void consume(TokenType type) {
+		consume(type, null);
 	}
-	private Token consume(TokenType type, String message) {
-		if (check(type))
-			return advance();
+	private void consume(TokenType type, String message) {
+		if (check(type)) {
+			advance();
+			return;
+		}
 
 		if(message == null)
 			message = "Expected " + type.toString() + " token.";
 		
-		throw error(peek(), message);
+		throw error(current, message);
 	}
 
 	// > advance
-	private Token advance() {
+	private void advance() {
 		if (!isAtEnd())
 			current++;
-		return previous();
 	}
 
 	// > utils
 	private boolean isAtEnd() {
-		return peek().type == TokenType.EOF;
+		return peekType() == TokenType.EOF;
 	}
 
-	private Token peek() {
-		return tokens.get(current);
+	private TokenType peekType() {
+		return tokens.type(current);
 	}
 
+	// Makes a Token for the last token that was matched, only for tokens that end up in the tree
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.token(current - 1);
 	}
-	private Token next() {
-		return tokens.get(current + 1);
-		
+
+	private int previousLine() {
+		return tokens.line(current - 1);
 	}
 	// < utils
 }
@@ -0,0 +1,232 @@
+package Sulfur;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+ * Records where the Interpreter spends its time when a program is run with --profile.
+ * EX: --profile prints a report, --profile-stacks=out.folded writes collapsed stacks for flamegraph.pl
+ *
+ * Keeps track of:
+ * - calls and inclusive/exclusive time for every function, the time a function spends calling other functions is only counted as inclusive
+ * - how many times the body of every while loop runs
+ * - how many times a statement on every line runs
+ * - exclusive time for every distinct call stack, which is what the collapsed stack file holds
+ *
+ * The Interpreter only calls into the profiler when it has one, so running without --profile costs a null check per statement.
+ * Tasks each keep their own call stack, their stacks start at the function the task runs instead of main.
+ */
+public class Profiler {
+	private static final int MAX_REPORTED_LINES = 20;
+
+	private static class FunctionStats {
+		final Expr.FunctionDef func;
+		long calls = 0;
+		long inclusiveNanos = 0;
+		long exclusiveNanos = 0;
+
+		FunctionStats(Expr.FunctionDef func) {
+			this.func = func;
+		}
+	}
+
+	// One function call, or the whole program for the frame at the bottom of the main thread's stack
+	private static class Frame {
+		final Expr.FunctionDef func;
+		final String stack;
+		final long start;
+		// Whether this is the only call to the function on the stack, recursive calls are already part of its inclusive time
+		final boolean outermost;
+		long childNanos = 0;
+
+		Frame(Expr.FunctionDef func, String stack, long start, boolean outermost) {
+			this.func = func;
+			this.stack = stack;
+			this.start = start;
+			this.outermost = outermost;
+		}
+	}
+
+	private static class ThreadState {
+		final ArrayList<Frame> stack = new ArrayList<Frame>();
+		// How many calls to each function are on the stack
+		final IdentityHashMap<Expr.FunctionDef, Integer> active = new IdentityHashMap<Expr.FunctionDef, Integer>();
+	}
+
+	private final ThreadLocal<ThreadState> threads = ThreadLocal.withInitial(ThreadState::new);
+	private final IdentityHashMap<Expr.FunctionDef, FunctionStats> functions = new IdentityHashMap<Expr.FunctionDef, FunctionStats>();
+	private final IdentityHashMap<Expr.WhileStatement, long[]> loops = new IdentityHashMap<Expr.WhileStatement, long[]>();
+	private final HashMap<Integer, long[]> lines = new HashMap<Integer, long[]>();
+	private final HashMap<String, long[]> stacks = new HashMap<String, long[]>();
+	// Line of every statement that has run, worked out the first time it runs
+	private final IdentityHashMap<Expr, Integer> statementLines = new IdentityHashMap<Expr, Integer>();
+
+	// Called when the program starts running
+	public void start() {
+		push(null, "main");
+	}
+
+	// Called when the program stops running, normally or with an error
+	public void stop() {
+		ThreadState state = threads.get();
+		while(!state.stack.isEmpty()) {
+			pop(state);
+		}
+	}
+
+	// Called each time a function starts running, including calls started with X
+	public synchronized void enterFunction(Expr.FunctionDef func) {
+		functions.computeIfAbsent(func, FunctionStats::new).calls++;
+		ThreadState state = threads.get();
+		String name = (String) func.funcIdTok.value;
+		push(func, state.stack.isEmpty() ? name : state.stack.get(state.stack.size() - 1).stack + ";" + name);
+	}
+
+	public void exitFunction() {
+		pop(threads.get());
+	}
+
+	// A tail call runs the function's body again in the same Java call, but it still counts as a call
+	public synchronized void tailCall(Expr.FunctionDef func) {
+		functions.computeIfAbsent(func, FunctionStats::new).calls++;
+	}
+
+	// Called each time the body of a loop is about to run
+	public synchronized void iteration(Expr.WhileStatement loop) {
+		loops.computeIfAbsent(loop, l -> new long[1])[0]++;
+	}
+
+	// Called each time a statement is about to run
+	public synchronized void statement(Expr statement) {
+		Integer line = statementLines.get(statement);
+		if(line == null) {
+			line = lineOf(statement);
+			statementLines.put(statement, line);
+		}
+		if(line > 0) {
+			lines.computeIfAbsent(line, l -> new long[1])[0]++;
+		}
+	}
+
+	private void push(Expr.FunctionDef func, String stack) {
+		ThreadState state = threads.get();
+		boolean outermost = true;
+		if(func != null) {
+			Integer active = state.active.get(func);
+			outermost = active == null;
+			state.active.put(func, active == null ? 1 : active + 1);
+		}
+		state.stack.add(new Frame(func, stack, System.nanoTime(), outermost));
+	}
+
+	private synchronized void pop(ThreadState state) {
+		Frame frame = state.stack.remove(state.stack.size() - 1);
+		long elapsed = System.nanoTime() - frame.start;
+		long exclusive = elapsed - frame.childNanos;
+		if(!state.stack.isEmpty()) {
+			state.stack.get(state.stack.size() - 1).childNanos += elapsed;
+		}
+		stacks.computeIfAbsent(frame.stack, s -> new long[1])[0] += exclusive;
+
+		if(frame.func != null) {
+			FunctionStats stats = functions.get(frame.func);
+			stats.exclusiveNanos += exclusive;
+			if(frame.outermost) {
+				stats.inclusiveNanos += elapsed;
+			}
+			int active = state.active.get(frame.func);
+			if(active == 1) {
+				state.active.remove(frame.func);
+			}
+			else {
+				state.active.put(frame.func, active - 1);
+			}
+		}
+	}
+
+	// Finds the line a statement starts on, 0 for anything that isn't a statement
+	private static int lineOf(Expr expr) {
+		if(expr instanceof Expr.Assign) {
+			return ((Expr.Assign) expr).varIdTok.line;
+		}
+		else if(expr instanceof Expr.FunctionCall) {
+			return ((Expr.FunctionCall) expr).funcIdTok.line;
+		}
+		else if(expr instanceof Expr.ArrayMethodCall) {
+			return ((Expr.ArrayMethodCall) expr).methodTok.line;
+		}
+		else if(expr instanceof Expr.Execute) {
+			return ((Expr.Execute) expr).execTok.line;
+		}
+		else if(expr instanceof Expr.Await) {
+			return ((Expr.Await) expr).awaitTok.line;
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			return ((Expr.FunctionDef) expr).funcIdTok.line;
+		}
+		else if(expr instanceof Expr.WhileStatement) {
+			return ((Expr.WhileStatement) expr).lineNum;
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			return ((Expr.IfStatement) expr).conditionalBlocks.get(0).lineNum;
+		}
+		else if(expr instanceof Expr.FlowControlStmt) {
+			return ((Expr.FlowControlStmt) expr).ctrlTok.line;
+		}
+		else if(expr instanceof Expr.PrintStmt) {
+			return ((Expr.PrintStmt) expr).lineNum;
+		}
+		else if(expr instanceof Expr.ReturnStmt) {
+			return ((Expr.ReturnStmt) expr).lineNum;
+		}
+		return 0;
+	}
+
+	// Prints the functions sorted by exclusive time, the loops sorted by iterations, and the lines that ran the most
+	public synchronized void report(PrintStream s) {
+		s.println("\n/////////// PROFILE ///////////");
+		ArrayList<FunctionStats> funcs = new ArrayList<FunctionStats>(functions.values());
+		funcs.sort((a, b) -> Long.compare(b.exclusiveNanos, a.exclusiveNanos));
+		s.printf("%-20s %6s %12s %14s %14s%n", "Function", "Line", "Calls", "Inclusive ms", "Exclusive ms");
+		for(FunctionStats stats : funcs) {
+			s.printf("%-20s %6d %12d %14.3f %14.3f%n", stats.func.funcIdTok.value, stats.func.funcIdTok.line, stats.calls,
+					stats.inclusiveNanos / 1e6, stats.exclusiveNanos / 1e6);
+		}
+
+		ArrayList<Map.Entry<Expr.WhileStatement, long[]>> loopList = new ArrayList<Map.Entry<Expr.WhileStatement, long[]>>(loops.entrySet());
+		loopList.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+		s.printf("%n%-6s %12s%n", "Loop", "Iterations");
+		for(Map.Entry<Expr.WhileStatement, long[]> loop : loopList) {
+			s.printf("%-6d %12d%n", loop.getKey().lineNum, loop.getValue()[0]);
+		}
+
+		ArrayList<Map.Entry<Integer, long[]>> lineList = new ArrayList<Map.Entry<Integer, long[]>>(lines.entrySet());
+		lineList.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+		s.printf("%n%-6s %12s%n", "Line", "Hits");
+		for(int i = 0; i < lineList.size() && i < MAX_REPORTED_LINES; i++) {
+			s.printf("%-6d %12d%n", lineList.get(i).getKey(), lineList.get(i).getValue()[0]);
+		}
+		if(lineList.size() > MAX_REPORTED_LINES) {
+			s.println("("+(lineList.size() - MAX_REPORTED_LINES)+" more lines)");
+		}
+	}
+
+	// Writes one "main;caller;callee microseconds" line per call stack, the format flamegraph.pl and speedscope read
+	public synchronized void writeStacks(Path path) throws IOException {
+		try(PrintWriter w = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+			for(Map.Entry<String, long[]> stack : stacks.entrySet()) {
+				long micros = stack.getValue()[0] / 1000;
+				if(micros > 0) {
+					w.println(stack.getKey()+" "+micros);
+				}
+			}
+		}
+	}
+}
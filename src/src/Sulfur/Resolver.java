@@ -0,0 +1,399 @@
+package Sulfur;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Runs after the parser and before the interpreter.
+ * Works out which symbol table every variable lives in ahead of time so the interpreter never has to look variables up by name.
+ * Each variable access, assignment, and function call is given a depth (how many symbol tables up the variable is) and a slot (its index in that table).
+ *
+ * Symbol tables are created in the same places the interpreter creates them:
+ * the global table, one per function call (whose parent is always the global table), one per while loop, and one per if statement.
+ * Loops and if statements whose blocks don't define any new variables use the enclosing table instead, so the interpreter doesn't create a table
+ * every time they run. Most of them only read and update variables that already exist, like the inner if of primefinder.
+ * Assigning to a variable updates it if it is already defined in the current table or one of its parents, otherwise it is added to the current table.
+ * Names are never hashed or compared here, variables are found by the symbol ID the Lexer gave their name (see Symbols).
+ */
+public class Resolver {
+
+	// Compile time version of a symbol table which only keeps track of how many slots it has and which bindings it hides
+	// Scopes are opened and closed in stack order, so what a name refers to is kept in arrays indexed by its symbol ID
+	// and each scope puts back the bindings it replaced when it closes
+	private class Scope {
+		// How many scopes are open outside this one, the global scope is level 0
+		final int level;
+		int numSlots = 0;
+		// {symbol, level, slot} of each binding this scope replaced
+		private int[] shadowed = new int[0];
+		private int numShadowed = 0;
+
+		Scope(Scope parent) {
+			this.level = parent != null ? parent.level + 1 : 0;
+		}
+
+		int declare(int symbol) {
+			if(bindingLevel[symbol] == level) {
+				return bindingSlot[symbol];
+			}
+			if(numShadowed * 3 == shadowed.length) {
+				shadowed = Arrays.copyOf(shadowed, Math.max(12, shadowed.length * 2));
+			}
+			shadowed[numShadowed * 3] = symbol;
+			shadowed[numShadowed * 3 + 1] = bindingLevel[symbol];
+			shadowed[numShadowed * 3 + 2] = bindingSlot[symbol];
+			numShadowed++;
+			bindingLevel[symbol] = level;
+			bindingSlot[symbol] = numSlots;
+			return numSlots++;
+		}
+
+		void close() {
+			for(int i = numShadowed - 1; i >= 0; i--) {
+				int symbol = shadowed[i * 3];
+				bindingLevel[symbol] = shadowed[i * 3 + 1];
+				bindingSlot[symbol] = shadowed[i * 3 + 2];
+			}
+		}
+	}
+
+	private Symbols symbols;
+	// Level of the innermost open scope defining each symbol (-1 if none does) and its slot there
+	private int[] bindingLevel;
+	private int[] bindingSlot;
+	private Scope globalScope;
+	// Function bodies are resolved after the rest of the program so they can see every global variable
+	private final ArrayList<Expr.FunctionDef> functionDefs = new ArrayList<Expr.FunctionDef>();
+	// Function whose body is being resolved, null for the top level code
+	private Expr.FunctionDef currentFunction = null;
+
+	// Global variables are given values from outside the program (see SulfurScript), so they are defined before anything else
+	public void resolve(Expr.StatementBlock program, String... globals) {
+		// Set on every program the Parser, Optimizer, or AstCache returns
+		symbols = program.symbols;
+		int[] globalSymbols = new int[globals.length];
+		for(int i = 0; i < globals.length; i++) {
+			globalSymbols[i] = symbols.intern(globals[i]);
+		}
+		bindingLevel = new int[symbols.size()];
+		bindingSlot = new int[symbols.size()];
+		Arrays.fill(bindingLevel, -1);
+
+		globalScope = new Scope(null);
+		for(int symbol : globalSymbols) {
+			globalScope.declare(symbol);
+		}
+		resolve(program, globalScope);
+
+		for(int i = 0; i < functionDefs.size(); i++) {
+			resolve_FunctionBody(functionDefs.get(i));
+		}
+		program.numSlots = globalScope.numSlots;
+	}
+
+	// Slot of a global variable in the program that was last resolved, -1 if there isn't one with that name
+	// Every other scope has been closed by now, so only global variables are still bound
+	public int globalSlot(String name) {
+		int symbol = symbols.id(name);
+		return symbol >= 0 && bindingLevel[symbol] == 0 ? bindingSlot[symbol] : -1;
+	}
+
+	private void resolve(Expr expr, Scope scope) {
+		if(expr instanceof Expr.StatementBlock) {
+			for(Expr e : ((Expr.StatementBlock) expr).statements) {
+				resolve(e, scope);
+			}
+		}
+		else if(expr instanceof Expr.FunctionCall) {
+			resolve_FunctionCall((Expr.FunctionCall) expr, scope);
+		}
+		else if(expr instanceof Expr.Execute) {
+			resolve_FunctionCall(((Expr.Execute) expr).call, scope);
+		}
+		else if(expr instanceof Expr.Await) {
+			resolve(((Expr.Await) expr).task, scope);
+		}
+		else if(expr instanceof Expr.ArrayMethodCall) {
+			resolve(((Expr.ArrayMethodCall) expr).array, scope);
+			for(Expr e : ((Expr.ArrayMethodCall) expr).arguments) {
+				resolve(e, scope);
+			}
+		}
+		else if(expr instanceof Expr.PrintStmt) {
+			for(Expr e : ((Expr.PrintStmt) expr).arguments) {
+				resolve(e, scope);
+			}
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			resolve_FunctionDef((Expr.FunctionDef) expr, scope);
+		}
+		else if(expr instanceof Expr.ReturnStmt) {
+			resolve_ReturnStmt((Expr.ReturnStmt) expr, scope);
+		}
+		else if(expr instanceof Expr.WhileStatement) {
+			resolve_WhileStatement((Expr.WhileStatement) expr, scope);
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			resolve_IfStatement((Expr.IfStatement) expr, scope);
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			resolve(((Expr.BinaryOp) expr).left, scope);
+			resolve(((Expr.BinaryOp) expr).right, scope);
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			resolve(((Expr.UnaryOp) expr).right, scope);
+		}
+		else if(expr instanceof Expr.ValueArray) {
+			for(Expr e : ((Expr.ValueArray) expr).value) {
+				resolve(e, scope);
+			}
+		}
+		else if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			int symbol = access.varIdTok.symbol;
+			access.depth = lookup(symbol, scope);
+			access.slot = access.depth >= 0 ? bindingSlot[symbol] : -1;
+		}
+		else if(expr instanceof Expr.Assign) {
+			Expr.Assign assign = (Expr.Assign) expr;
+			// The value is evaluated before the variable is defined
+			resolve(assign.value, scope);
+			int symbol = assign.varIdTok.symbol;
+			assign.depth = lookupOrDeclare(symbol, scope);
+			assign.slot = bindingSlot[symbol];
+			assign.isUpdate = reads(assign.value, assign.depth, assign.slot) && !hasCall(assign.value);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			resolve(((Expr.Grouping) expr).expression, scope);
+		}
+		else if(expr instanceof Expr.Literal || expr instanceof Expr.FlowControlStmt) {
+			// Nothing to resolve
+		}
+		else {
+			throw new RuntimeException("Unrecognized expression type: "+expr.getClass().getSimpleName());
+		}
+	}
+
+	// Whether an already resolved expression reads the variable at depth and slot
+	private static boolean reads(Expr expr, int depth, int slot) {
+		if(expr instanceof Expr.VariableAccess) {
+			Expr.VariableAccess access = (Expr.VariableAccess) expr;
+			return access.depth == depth && access.slot == slot;
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			return reads(((Expr.BinaryOp) expr).left, depth, slot) || reads(((Expr.BinaryOp) expr).right, depth, slot);
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			return reads(((Expr.UnaryOp) expr).right, depth, slot);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return reads(((Expr.Grouping) expr).expression, depth, slot);
+		}
+		else if(expr instanceof Expr.ValueArray) {
+			for(Expr e : ((Expr.ValueArray) expr).value) {
+				if(reads(e, depth, slot)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasCall(Expr expr) {
+		if(Interpreter.isCall(expr)) {
+			return true;
+		}
+		else if(expr instanceof Expr.BinaryOp) {
+			return hasCall(((Expr.BinaryOp) expr).left) || hasCall(((Expr.BinaryOp) expr).right);
+		}
+		else if(expr instanceof Expr.UnaryOp) {
+			return hasCall(((Expr.UnaryOp) expr).right);
+		}
+		else if(expr instanceof Expr.Grouping) {
+			return hasCall(((Expr.Grouping) expr).expression);
+		}
+		else if(expr instanceof Expr.ValueArray) {
+			for(Expr e : ((Expr.ValueArray) expr).value) {
+				if(hasCall(e)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void resolve_FunctionCall(Expr.FunctionCall expr, Scope scope) {
+		int symbol = expr.funcIdTok.symbol;
+		expr.depth = lookup(symbol, scope);
+		expr.slot = expr.depth >= 0 ? bindingSlot[symbol] : -1;
+		for(Expr e : expr.arguments) {
+			resolve(e, scope);
+		}
+	}
+
+	private void resolve_FunctionDef(Expr.FunctionDef expr, Scope scope) {
+		int symbol = expr.funcIdTok.symbol;
+		expr.depth = lookupOrDeclare(symbol, scope);
+		expr.slot = bindingSlot[symbol];
+
+		if(!functionDefs.contains(expr)) {
+			functionDefs.add(expr);
+		}
+	}
+
+	// Parameters always go in the function's own symbol table, before anything else
+	private void resolve_FunctionBody(Expr.FunctionDef expr) {
+		Scope funcScope = new Scope(globalScope);
+		for(Expr.Parameter param : expr.parameters) {
+			param.slot = funcScope.declare(param.varIdTok.symbol);
+		}
+		currentFunction = expr;
+		resolve(expr.funcBlock, funcScope);
+		currentFunction = null;
+		funcScope.close();
+		expr.numSlots = funcScope.numSlots;
+	}
+
+	// R f(...) is a tail call if the function it is in has a return type
+	// Without one, the function always results in null and a return of null doesn't actually return, so the call isn't the last thing to run
+	// Whether f is the function itself is only known when the call runs, since function variables can be reassigned
+	private void resolve_ReturnStmt(Expr.ReturnStmt expr, Scope scope) {
+		resolve(expr.returnExp, scope);
+		expr.function = currentFunction;
+		if(currentFunction != null && currentFunction.returnType != null && expr.returnExp instanceof Expr.FunctionCall) {
+			expr.isTailCall = true;
+			currentFunction.hasTailCalls = true;
+		}
+	}
+
+	// Variables the loop defines in its own table are declared before the body is resolved so that variables defined near the end of the body
+	// are found by code near the start of the body, which sees them on the next iteration
+	// The body is only resolved once, resolving it a second time instead would resolve loops nested n deep 2^n times
+	private void resolve_WhileStatement(Expr.WhileStatement expr, Scope scope) {
+		expr.hasScope = declares(expr.block, scope);
+		Scope loopScope = expr.hasScope ? new Scope(scope) : scope;
+		if(expr.hasScope) {
+			declareAll(expr.block, loopScope);
+		}
+		resolve(expr.condition, loopScope);
+		resolve(expr.block, loopScope);
+		if(expr.hasScope) {
+			loopScope.close();
+		}
+		expr.numSlots = expr.hasScope ? loopScope.numSlots : 0;
+	}
+
+	// The conditions and their blocks share one symbol table, but the else block uses the enclosing one
+	private void resolve_IfStatement(Expr.IfStatement expr, Scope scope) {
+		expr.hasScope = false;
+		for(Expr.ConditionalBlock ifBlock : expr.conditionalBlocks) {
+			expr.hasScope |= declares(ifBlock.body, scope);
+		}
+		Scope ifScope = expr.hasScope ? new Scope(scope) : scope;
+		for(Expr.ConditionalBlock ifBlock : expr.conditionalBlocks) {
+			resolve(ifBlock.condition, ifScope);
+			resolve(ifBlock.body, ifScope);
+		}
+		if(expr.hasScope) {
+			ifScope.close();
+		}
+		expr.numSlots = expr.hasScope ? ifScope.numSlots : 0;
+
+		if(expr.elseBlock != null) {
+			resolve(expr.elseBlock, scope);
+		}
+	}
+
+	// Whether running a block would define a variable that isn't already defined in scope or one of its parents
+	// Nested loops and if statements make that decision for their own blocks, so only else blocks, which use this block's table, are checked
+	private boolean declares(Expr expr, Scope scope) {
+		if(expr instanceof Expr.StatementBlock) {
+			for(Expr e : ((Expr.StatementBlock) expr).statements) {
+				if(declares(e, scope)) {
+					return true;
+				}
+			}
+		}
+		else if(expr instanceof Expr.Assign) {
+			return lookup(((Expr.Assign) expr).varIdTok.symbol, scope) == -1;
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			return lookup(((Expr.FunctionDef) expr).funcIdTok.symbol, scope) == -1;
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			Expr.IfStatement ifStmt = (Expr.IfStatement) expr;
+			return ifStmt.elseBlock != null && declares(ifStmt.elseBlock, scope);
+		}
+		return false;
+	}
+
+	// Declares every variable running a block would define in scope, in the order resolving the block would declare them
+	// Goes through the same statements as declares, the blocks of nested loops and if statements have their own tables
+	private void declareAll(Expr expr, Scope scope) {
+		if(expr instanceof Expr.StatementBlock) {
+			for(Expr e : ((Expr.StatementBlock) expr).statements) {
+				declareAll(e, scope);
+			}
+		}
+		else if(expr instanceof Expr.Assign) {
+			lookupOrDeclare(((Expr.Assign) expr).varIdTok.symbol, scope);
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			lookupOrDeclare(((Expr.FunctionDef) expr).funcIdTok.symbol, scope);
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			Expr.IfStatement ifStmt = (Expr.IfStatement) expr;
+			if(ifStmt.elseBlock != null) {
+				declareAll(ifStmt.elseBlock, scope);
+			}
+		}
+	}
+
+	// Finds every function definition in the program, including ones nested inside other functions
+	// Used by the compilers, which generate code for each function separately
+	public static ArrayList<Expr.FunctionDef> findFunctions(Expr program) {
+		ArrayList<Expr.FunctionDef> funcDefs = new ArrayList<Expr.FunctionDef>();
+		findFunctions(program, funcDefs);
+		return funcDefs;
+	}
+
+	private static void findFunctions(Expr expr, ArrayList<Expr.FunctionDef> funcDefs) {
+		if(expr instanceof Expr.StatementBlock) {
+			for(Expr e : ((Expr.StatementBlock) expr).statements) {
+				findFunctions(e, funcDefs);
+			}
+		}
+		else if(expr instanceof Expr.FunctionDef) {
+			funcDefs.add((Expr.FunctionDef) expr);
+			findFunctions(((Expr.FunctionDef) expr).funcBlock, funcDefs);
+		}
+		else if(expr instanceof Expr.WhileStatement) {
+			findFunctions(((Expr.WhileStatement) expr).block, funcDefs);
+		}
+		else if(expr instanceof Expr.IfStatement) {
+			Expr.IfStatement ifStmt = (Expr.IfStatement) expr;
+			for(Expr.ConditionalBlock ifBlock : ifStmt.conditionalBlocks) {
+				findFunctions(ifBlock.body, funcDefs);
+			}
+			if(ifStmt.elseBlock != null) {
+				findFunctions(ifStmt.elseBlock, funcDefs);
+			}
+		}
+	}
+
+	// Returns how many symbol tables up from scope a variable is, or -1 if it is not defined anywhere, its slot is bindingSlot[symbol]
+	// Undefined variables are reported by the interpreter if the code using them actually runs
+	private int lookup(int symbol, Scope scope) {
+		int level = bindingLevel[symbol];
+		return level >= 0 ? scope.level - level : -1;
+	}
+
+	// Same as lookup but adds the variable to the current scope if it is not already defined
+	private int lookupOrDeclare(int symbol, Scope scope) {
+		int depth = lookup(symbol, scope);
+		if(depth == -1) {
+			scope.declare(symbol);
+			depth = 0;
+		}
+		return depth;
+	}
+}
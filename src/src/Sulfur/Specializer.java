@@ -0,0 +1,407 @@
+package Sulfur;
+
+/*
+ * Type feedback for binary and unary operations in the Interpreter.
+ * The first time an operation runs, it records the types of its operands and switches itself to a specialized state
+ * (int/int, long/long, double/double, or string concatenation) that does the arithmetic directly
+ * instead of going through OperationPerformer's type lookups and conversions.
+ * If the operand types ever change, the operation goes back to the generic OperationPerformer path for good.
+ *
+ * Every specialized path checks its operand types before using them, so an out of date state can never give a wrong result.
+ * The results and errors are the same as OperationPerformer's for the same operand types.
+ */
+public class Specializer {
+
+	// Specialization states stored in Expr.BinaryOp.state and Expr.UnaryOp.state
+	public static final int UNINITIALIZED = 0;
+	public static final int INT = 1;
+	public static final int LONG = 2;
+	public static final int DOUBLE = 3;
+	public static final int STRING = 4;
+	public static final int BOOLEAN = 5;
+	public static final int GENERIC = 6;
+
+	//////////////////// BINARY OPERATIONS ////////////////////
+
+	public static Object binaryOp(Expr.BinaryOp expr, Object left, Object right) {
+		switch(expr.state) {
+		case INT:
+			if(left instanceof Integer && right instanceof Integer) {
+				return intOp(expr, (Integer) left, (Integer) right);
+			}
+			break;
+		case LONG:
+			if(left instanceof Long && right instanceof Long) {
+				return longOp(expr, (Long) left, (Long) right);
+			}
+			break;
+		case DOUBLE:
+			if(left instanceof Double && right instanceof Double) {
+				return doubleOp(expr, (Double) left, (Double) right);
+			}
+			break;
+		case STRING:
+			if(left instanceof String && right instanceof String) {
+				return stringOp(expr, (String) left, (String) right);
+			}
+			break;
+		case GENERIC:
+			return Interpreter.performBinaryOp(expr.operator.type, left, right, expr.operator.line);
+		case UNINITIALIZED:
+			expr.state = binaryState(expr.operator.type, left, right);
+			return binaryOp(expr, left, right);
+		}
+
+		// The operand types changed, so stop specializing this operation
+		expr.state = GENERIC;
+		return Interpreter.performBinaryOp(expr.operator.type, left, right, expr.operator.line);
+	}
+
+	// Picks the specialized state for the operands seen the first time the operation runs
+	private static int binaryState(TokenType operator, Object left, Object right) {
+		if(operator == TokenType.AND || operator == TokenType.OR) {
+			return GENERIC;
+		}
+		if(left instanceof Integer && right instanceof Integer) {
+			return INT;
+		}
+		if(left instanceof Long && right instanceof Long) {
+			return LONG;
+		}
+		if(left instanceof Double && right instanceof Double) {
+			return DOUBLE;
+		}
+		if(left instanceof String && right instanceof String && (operator == TokenType.ADD || operator == TokenType.EQUALITY || operator == TokenType.NOT_EQ)) {
+			return STRING;
+		}
+		return GENERIC;
+	}
+
+	// Comparisons give a boolean, every other specialized operation gives a value with the same type as its operands
+	public static boolean isComparison(TokenType operator) {
+		switch(operator) {
+		case EQUALITY:
+		case NOT_EQ:
+		case LESS_THAN:
+		case GREATER_THAN:
+		case LT_EQ:
+		case GT_EQ:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static Object intOp(Expr.BinaryOp expr, int left, int right) {
+		if(isComparison(expr.operator.type)) {
+			return intComparison(expr, left, right);
+		}
+		return intArithmetic(expr, left, right);
+	}
+
+	private static Object longOp(Expr.BinaryOp expr, long left, long right) {
+		if(isComparison(expr.operator.type)) {
+			return longComparison(expr, left, right);
+		}
+		return longArithmetic(expr, left, right);
+	}
+
+	private static Object doubleOp(Expr.BinaryOp expr, double left, double right) {
+		if(isComparison(expr.operator.type)) {
+			return doubleComparison(expr, left, right);
+		}
+		return doubleArithmetic(expr, left, right);
+	}
+
+	// The arithmetic and comparison methods below work on unboxed values so the Interpreter's typed evaluate methods can use them directly
+
+	public static int intArithmetic(Expr.BinaryOp expr, int left, int right) {
+		switch(expr.operator.type) {
+		case ADD:
+			return left + right;
+		case SUB:
+			return left - right;
+		case MULTIPLY:
+			return left * right;
+		case DIVIDE:
+			checkDivisor(right == 0, expr);
+			return left / right;
+		case MODULUS:
+			checkDivisor(right == 0, expr);
+			return left % right;
+		default:
+			Interpreter.error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			return 0;
+		}
+	}
+
+	public static boolean intComparison(Expr.BinaryOp expr, int left, int right) {
+		switch(expr.operator.type) {
+		case EQUALITY:
+			return left == right;
+		case NOT_EQ:
+			return left != right;
+		case LESS_THAN:
+			return left < right;
+		case GREATER_THAN:
+			return left > right;
+		case LT_EQ:
+			return left <= right;
+		case GT_EQ:
+			return left >= right;
+		default:
+			Interpreter.error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			return false;
+		}
+	}
+
+	public static long longArithmetic(Expr.BinaryOp expr, long left, long right) {
+		switch(expr.operator.type) {
+		case ADD:
+			return left + right;
+		case SUB:
+			return left - right;
+		case MULTIPLY:
+			return left * right;
+		case DIVIDE:
+			checkDivisor(right == 0, expr);
+			return left / right;
+		case MODULUS:
+			checkDivisor(right == 0, expr);
+			return left % right;
+		default:
+			Interpreter.error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			return 0;
+		}
+	}
+
+	public static boolean longComparison(Expr.BinaryOp expr, long left, long right) {
+		switch(expr.operator.type) {
+		case EQUALITY:
+			return left == right;
+		case NOT_EQ:
+			return left != right;
+		case LESS_THAN:
+			return left < right;
+		case GREATER_THAN:
+			return left > right;
+		case LT_EQ:
+			return left <= right;
+		case GT_EQ:
+			return left >= right;
+		default:
+			Interpreter.error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			return false;
+		}
+	}
+
+	public static double doubleArithmetic(Expr.BinaryOp expr, double left, double right) {
+		switch(expr.operator.type) {
+		case ADD:
+			return left + right;
+		case SUB:
+			return left - right;
+		case MULTIPLY:
+			return left * right;
+		case DIVIDE:
+			checkDivisor(Math.abs(right) == 0.0, expr);
+			return left / right;
+		case MODULUS:
+			checkDivisor(Math.abs(right) == 0.0, expr);
+			return left % right;
+		default:
+			Interpreter.error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			return 0;
+		}
+	}
+
+	public static boolean doubleComparison(Expr.BinaryOp expr, double left, double right) {
+		switch(expr.operator.type) {
+		case EQUALITY:
+			return left == right;
+		case NOT_EQ:
+			return left != right;
+		case LESS_THAN:
+			return left < right;
+		case GREATER_THAN:
+			return left > right;
+		case LT_EQ:
+			return left <= right;
+		case GT_EQ:
+			return left >= right;
+		default:
+			Interpreter.error("Unknown operator type "+expr.operator.type, expr.operator.line);
+			return false;
+		}
+	}
+
+	private static Object stringOp(Expr.BinaryOp expr, String left, String right) {
+		switch(expr.operator.type) {
+		case ADD:
+			return left + right;
+		case EQUALITY:
+			return left.equals(right);
+		case NOT_EQ:
+			return !left.equals(right);
+		default:
+			return Interpreter.performBinaryOp(expr.operator.type, left, right, expr.operator.line);
+		}
+	}
+
+	private static void checkDivisor(boolean isZero, Expr.BinaryOp expr) {
+		if(isZero) {
+			Interpreter.error("Cannot divide by zero", expr.operator.line);
+		}
+	}
+
+	// The primitive type an operation gives when its operands have the types it was specialized for, or GENERIC if it gives an Object
+	public static int resultType(Expr.BinaryOp expr) {
+		switch(expr.state) {
+		case INT:
+		case LONG:
+		case DOUBLE:
+			return isComparison(expr.operator.type) ? BOOLEAN : expr.state;
+		default:
+			return GENERIC;
+		}
+	}
+
+	//////////////////// UNARY OPERATIONS ////////////////////
+
+	public static Object unaryOp(Expr.UnaryOp expr, Object o) {
+		switch(expr.state) {
+		case INT:
+			if(o instanceof Integer) {
+				return intUnaryOp(expr, (Integer) o);
+			}
+			break;
+		case LONG:
+			if(o instanceof Long) {
+				return longUnaryOp(expr, (Long) o);
+			}
+			break;
+		case DOUBLE:
+			if(o instanceof Double) {
+				return doubleUnaryOp(expr, (Double) o);
+			}
+			break;
+		case BOOLEAN:
+			if(o instanceof Boolean) {
+				return !(Boolean) o;
+			}
+			break;
+		case GENERIC:
+			return Interpreter.performUnaryOp(expr.operator.type, o, expr.operator.line);
+		case UNINITIALIZED:
+			expr.state = unaryState(expr.operator.type, o);
+			return unaryOp(expr, o);
+		}
+
+		// The operand type changed, so stop specializing this operation
+		expr.state = GENERIC;
+		return Interpreter.performUnaryOp(expr.operator.type, o, expr.operator.line);
+	}
+
+	// Same as resultType for binary operations, casts give the type being casted to
+	public static int resultType(Expr.UnaryOp expr) {
+		switch(expr.state) {
+		case INT:
+		case LONG:
+		case DOUBLE:
+			switch(expr.operator.type) {
+			case ADD:
+			case SUB:
+				return expr.state;
+			case INTEGER_T:
+				return INT;
+			case LONG_T:
+				return LONG;
+			case DOUBLE_T:
+				return DOUBLE;
+			default:
+				return GENERIC;
+			}
+		case BOOLEAN:
+			return BOOLEAN;
+		default:
+			return GENERIC;
+		}
+	}
+
+	// Only negation, plus, and numeric casts are specialized on numbers, and only not is specialized on booleans
+	private static int unaryState(TokenType operator, Object o) {
+		switch(operator) {
+		case SUB:
+		case ADD:
+		case DOUBLE_T:
+		case FLOAT_T:
+		case LONG_T:
+		case INTEGER_T:
+			if(o instanceof Integer) return INT;
+			if(o instanceof Long) return LONG;
+			if(o instanceof Double) return DOUBLE;
+			return GENERIC;
+		case NOT:
+			return o instanceof Boolean ? BOOLEAN : GENERIC;
+		default:
+			return GENERIC;
+		}
+	}
+
+	private static Object intUnaryOp(Expr.UnaryOp expr, int o) {
+		switch(expr.operator.type) {
+		case ADD:
+			return o;
+		case SUB:
+			return -o;
+		case DOUBLE_T:
+			return (double) o;
+		case FLOAT_T:
+			return (float) o;
+		case LONG_T:
+			return (long) o;
+		case INTEGER_T:
+			return o;
+		default:
+			return Interpreter.performUnaryOp(expr.operator.type, o, expr.operator.line);
+		}
+	}
+
+	private static Object longUnaryOp(Expr.UnaryOp expr, long o) {
+		switch(expr.operator.type) {
+		case ADD:
+			return o;
+		case SUB:
+			return -o;
+		case DOUBLE_T:
+			return (double) o;
+		case FLOAT_T:
+			return (float) o;
+		case LONG_T:
+			return o;
+		case INTEGER_T:
+			return (int) o;
+		default:
+			return Interpreter.performUnaryOp(expr.operator.type, o, expr.operator.line);
+		}
+	}
+
+	private static Object doubleUnaryOp(Expr.UnaryOp expr, double o) {
+		switch(expr.operator.type) {
+		case ADD:
+			return o;
+		case SUB:
+			return -o;
+		case DOUBLE_T:
+			return o;
+		case FLOAT_T:
+			return (float) o;
+		case LONG_T:
+			return (long) o;
+		case INTEGER_T:
+			return (int) o;
+		default:
+			return Interpreter.performUnaryOp(expr.operator.type, o, expr.operator.line);
+		}
+	}
+}
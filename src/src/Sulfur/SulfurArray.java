@@ -0,0 +1,415 @@
+package Sulfur;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/*
+ * Growable array used for every Sulfur array.
+ * Arrays assigned to a variable (or passed to a parameter) declared as N[], L[], D[], C[], or B[] keep their elements unboxed
+ * in an int[], long[], double[], char[], or a bitset, which takes a fraction of the memory of boxed objects and keeps the elements next to each other.
+ * Every other array, including arrays of arrays, keeps its elements boxed in an Object[].
+ *
+ * Sulfur doesn't check the types of array elements, so a typed array can still be given a value of another type.
+ * When that happens the array switches to boxed storage for good, so every value always comes back out exactly as it was put in.
+ * It is a List so printing, equality, and contains work exactly like they did when arrays were ArrayLists.
+ */
+public class SulfurArray extends AbstractList<Object> implements RandomAccess {
+	// How the elements are stored, only the storage array for the current kind is used
+	private static final byte BOXED = 0;
+	private static final byte INT = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte CHAR = 4;
+	private static final byte BOOLEAN = 5;
+
+	private byte kind = BOXED;
+	private int size;
+	private Object[] objects;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	private char[] chars;
+	// Booleans are packed 64 to a long
+	private long[] bits;
+	// Cleared once the array has held a mix of types, so it isn't checked again every time it is assigned
+	private boolean specializable = true;
+
+	// The array uses values as its storage, so it must not be used by anything else afterwards
+	public SulfurArray(Object[] values) {
+		objects = values;
+		size = values.length;
+	}
+
+	private SulfurArray() {
+	}
+
+	// Switches a boxed array to the unboxed storage for type if every element has exactly that type
+	// Elements are never converted, a D[] holding an integer stays boxed since the integer has to stay an integer
+	public void specialize(TokenType type) {
+		if(kind != BOXED || !specializable) {
+			return;
+		}
+		byte newKind = kindOf(type);
+		if(newKind == BOXED) {
+			return;
+		}
+		for(int i = 0; i < size; i++) {
+			if(!fits(newKind, objects[i])) {
+				specializable = false;
+				return;
+			}
+		}
+
+		int capacity = Math.max(size, 10);
+		switch(newKind) {
+		case INT:
+			ints = new int[capacity];
+			for(int i = 0; i < size; i++) ints[i] = (Integer) objects[i];
+			break;
+		case LONG:
+			longs = new long[capacity];
+			for(int i = 0; i < size; i++) longs[i] = (Long) objects[i];
+			break;
+		case DOUBLE:
+			doubles = new double[capacity];
+			for(int i = 0; i < size; i++) doubles[i] = (Double) objects[i];
+			break;
+		case CHAR:
+			chars = new char[capacity];
+			for(int i = 0; i < size; i++) chars[i] = (Character) objects[i];
+			break;
+		default:
+			bits = new long[words(capacity)];
+			for(int i = 0; i < size; i++) setBit(i, (Boolean) objects[i]);
+			break;
+		}
+		objects = null;
+		kind = newKind;
+	}
+
+	private static byte kindOf(TokenType type) {
+		switch(type) {
+		case INTEGER_T:
+			return INT;
+		case LONG_T:
+			return LONG;
+		case DOUBLE_T:
+			return DOUBLE;
+		case CHARACTER_T:
+			return CHAR;
+		case BOOLEAN_T:
+			return BOOLEAN;
+		default:
+			return BOXED;
+		}
+	}
+
+	private static boolean fits(byte kind, Object value) {
+		switch(kind) {
+		case INT:
+			return value instanceof Integer;
+		case LONG:
+			return value instanceof Long;
+		case DOUBLE:
+			return value instanceof Double;
+		case CHAR:
+			return value instanceof Character;
+		case BOOLEAN:
+			return value instanceof Boolean;
+		default:
+			return true;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Object get(int index) {
+		Objects.checkIndex(index, size);
+		switch(kind) {
+		case INT:
+			return ints[index];
+		case LONG:
+			return longs[index];
+		case DOUBLE:
+			return doubles[index];
+		case CHAR:
+			return chars[index];
+		case BOOLEAN:
+			return getBit(index);
+		default:
+			return objects[index];
+		}
+	}
+
+	@Override
+	public Object set(int index, Object value) {
+		Object old = get(index);
+		if(!fits(kind, value)) {
+			box();
+		}
+		store(index, value);
+		return old;
+	}
+
+	@Override
+	public void add(int index, Object value) {
+		if(index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+		if(!fits(kind, value)) {
+			box();
+		}
+		ensureCapacity(size + 1);
+		shift(index, index + 1, size - index);
+		size++;
+		modCount++;
+		store(index, value);
+	}
+
+	@Override
+	public Object remove(int index) {
+		Object old = get(index);
+		shift(index + 1, index, size - index - 1);
+		size--;
+		modCount++;
+		if(kind == BOXED) {
+			objects[size] = null;
+		}
+		return old;
+	}
+
+	@Override
+	public boolean remove(Object value) {
+		int index = indexOf(value);
+		if(index < 0) {
+			return false;
+		}
+		remove(index);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		if(kind == BOXED) {
+			Arrays.fill(objects, 0, size, null);
+		}
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public boolean contains(Object value) {
+		return indexOf(value) >= 0;
+	}
+
+	// Compares elements the same way equals does on their boxed versions
+	@Override
+	public int indexOf(Object value) {
+		if(!fits(kind, value)) {
+			return -1;
+		}
+		switch(kind) {
+		case INT:
+			int n = (Integer) value;
+			for(int i = 0; i < size; i++) {
+				if(ints[i] == n) return i;
+			}
+			return -1;
+		case LONG:
+			long l = (Long) value;
+			for(int i = 0; i < size; i++) {
+				if(longs[i] == l) return i;
+			}
+			return -1;
+		case DOUBLE:
+			long d = Double.doubleToLongBits((Double) value);
+			for(int i = 0; i < size; i++) {
+				if(Double.doubleToLongBits(doubles[i]) == d) return i;
+			}
+			return -1;
+		case CHAR:
+			char c = (Character) value;
+			for(int i = 0; i < size; i++) {
+				if(chars[i] == c) return i;
+			}
+			return -1;
+		case BOOLEAN:
+			boolean b = (Boolean) value;
+			for(int i = 0; i < size; i++) {
+				if(getBit(i) == b) return i;
+			}
+			return -1;
+		default:
+			for(int i = 0; i < size; i++) {
+				if(value == null ? objects[i] == null : value.equals(objects[i])) return i;
+			}
+			return -1;
+		}
+	}
+
+	// Shallow copy that keeps the same storage kind
+	public SulfurArray copy() {
+		SulfurArray copy = new SulfurArray();
+		copy.kind = kind;
+		copy.size = size;
+		copy.specializable = specializable;
+		int capacity = Math.max(size, 10);
+		switch(kind) {
+		case INT:
+			copy.ints = Arrays.copyOf(ints, capacity);
+			break;
+		case LONG:
+			copy.longs = Arrays.copyOf(longs, capacity);
+			break;
+		case DOUBLE:
+			copy.doubles = Arrays.copyOf(doubles, capacity);
+			break;
+		case CHAR:
+			copy.chars = Arrays.copyOf(chars, capacity);
+			break;
+		case BOOLEAN:
+			copy.bits = Arrays.copyOf(bits, words(capacity));
+			break;
+		default:
+			copy.objects = Arrays.copyOf(objects, capacity);
+			break;
+		}
+		return copy;
+	}
+
+	// Stores a value that is known to fit the current kind
+	private void store(int index, Object value) {
+		switch(kind) {
+		case INT:
+			ints[index] = (Integer) value;
+			break;
+		case LONG:
+			longs[index] = (Long) value;
+			break;
+		case DOUBLE:
+			doubles[index] = (Double) value;
+			break;
+		case CHAR:
+			chars[index] = (Character) value;
+			break;
+		case BOOLEAN:
+			setBit(index, (Boolean) value);
+			break;
+		default:
+			objects[index] = value;
+			break;
+		}
+	}
+
+	// Moves count elements starting at from so they start at to
+	private void shift(int from, int to, int count) {
+		switch(kind) {
+		case INT:
+			System.arraycopy(ints, from, ints, to, count);
+			break;
+		case LONG:
+			System.arraycopy(longs, from, longs, to, count);
+			break;
+		case DOUBLE:
+			System.arraycopy(doubles, from, doubles, to, count);
+			break;
+		case CHAR:
+			System.arraycopy(chars, from, chars, to, count);
+			break;
+		case BOOLEAN:
+			if(to > from) {
+				for(int i = count - 1; i >= 0; i--) setBit(to + i, getBit(from + i));
+			}
+			else {
+				for(int i = 0; i < count; i++) setBit(to + i, getBit(from + i));
+			}
+			break;
+		default:
+			System.arraycopy(objects, from, objects, to, count);
+			break;
+		}
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		int capacity = capacity();
+		if(minCapacity <= capacity) {
+			return;
+		}
+		int newCapacity = Math.max(capacity + (capacity >> 1), Math.max(minCapacity, 10));
+		switch(kind) {
+		case INT:
+			ints = Arrays.copyOf(ints, newCapacity);
+			break;
+		case LONG:
+			longs = Arrays.copyOf(longs, newCapacity);
+			break;
+		case DOUBLE:
+			doubles = Arrays.copyOf(doubles, newCapacity);
+			break;
+		case CHAR:
+			chars = Arrays.copyOf(chars, newCapacity);
+			break;
+		case BOOLEAN:
+			bits = Arrays.copyOf(bits, words(newCapacity));
+			break;
+		default:
+			objects = Arrays.copyOf(objects, newCapacity);
+			break;
+		}
+	}
+
+	private int capacity() {
+		switch(kind) {
+		case INT:
+			return ints.length;
+		case LONG:
+			return longs.length;
+		case DOUBLE:
+			return doubles.length;
+		case CHAR:
+			return chars.length;
+		case BOOLEAN:
+			return bits.length * 64;
+		default:
+			return objects.length;
+		}
+	}
+
+	// Moves the elements into boxed storage when a value that doesn't fit the unboxed storage is added
+	private void box() {
+		Object[] boxed = new Object[Math.max(capacity(), 10)];
+		for(int i = 0; i < size; i++) {
+			boxed[i] = get(i);
+		}
+		objects = boxed;
+		ints = null;
+		longs = null;
+		doubles = null;
+		chars = null;
+		bits = null;
+		kind = BOXED;
+		specializable = false;
+	}
+
+	private static int words(int numBits) {
+		return (numBits + 63) / 64;
+	}
+
+	private boolean getBit(int index) {
+		return (bits[index >> 6] & (1L << index)) != 0;
+	}
+
+	private void setBit(int index, boolean value) {
+		if(value) {
+			bits[index >> 6] |= 1L << index;
+		}
+		else {
+			bits[index >> 6] &= ~(1L << index);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package Sulfur;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+ * Entry point for running Sulfur from other Java code: compile a program once, then execute it as many times as needed.
+ * EX:
+ * SulfurScript script = SulfurScript.compile("P(x*2)", "x");
+ * Termination result = script.execute(Map.of("x", 21), OutputSink.standard());
+ *
+ * Global variables that are given a value by the caller (bindings) have to be named when the program is compiled so the Resolver can give them a slot.
+ * Bindings can be ints, longs, floats, doubles, chars, strings, booleans, or Lists of those, which become Sulfur arrays.
+ *
+ * A compiled script can be executed by any number of threads at once. The tree is never changed after compiling
+ * except for the hints the Interpreter keeps in it (specialized operations and cached call targets), which are correct for every execution.
+ * Each execution gets its own Interpreter, which holds the global variables, taken from a small pool so they aren't created every time.
+ */
+public class SulfurScript {
+	private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+	private final Expr.StatementBlock program;
+	private final HashMap<String, Integer> bindingSlots = new HashMap<String, Integer>();
+	private final ArrayBlockingQueue<Interpreter> pool = new ArrayBlockingQueue<Interpreter>(POOL_SIZE);
+
+	private SulfurScript(Expr.StatementBlock program) {
+		this.program = program;
+	}
+
+	// Lexes, parses, optimizes, and resolves a program, throws a RuntimeException if it has a syntax error
+	public static SulfurScript compile(String code, String... bindingNames) {
+		Expr.StatementBlock program = Optimizer.optimize(new Parser(new Lexer(code).lex()).parse());
+		Resolver resolver = new Resolver();
+		resolver.resolve(program, bindingNames);
+
+		SulfurScript script = new SulfurScript(program);
+		for(String name : bindingNames) {
+			script.bindingSlots.put(name, resolver.globalSlot(name));
+		}
+		return script;
+	}
+
+	public Termination execute(OutputSink out) {
+		return execute(Map.of(), out);
+	}
+
+	public Termination execute(Map<String, ?> bindings, OutputSink out) {
+		return execute(bindings, out, Limits.NONE);
+	}
+
+	// Runs the program from the start with the given global variables and returns how it stopped, errors in the program don't throw
+	// A program that goes over one of the limits is stopped with a Termination of kind LIMIT
+	public Termination execute(Map<String, ?> bindings, OutputSink out, Limits limits) {
+		Interpreter interpreter = pool.poll();
+		if(interpreter == null) {
+			interpreter = new Interpreter(program, out, null, limits);
+		}
+		else {
+			interpreter.reset(out, limits);
+		}
+
+		for(Map.Entry<String, ?> binding : bindings.entrySet()) {
+			Integer slot = bindingSlots.get(binding.getKey());
+			if(slot == null) {
+				throw new IllegalArgumentException("Binding "+binding.getKey()+" was not named when the script was compiled");
+			}
+			interpreter.setGlobal(slot, toSulfur(binding.getKey(), binding.getValue()));
+		}
+
+		try {
+			return interpreter.run();
+		} finally {
+			// Full pool means the interpreter is just dropped
+			if(interpreter.canReset()) {
+				pool.offer(interpreter);
+			}
+		}
+	}
+
+	private static Object toSulfur(String name, Object value) {
+		if(value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double
+				|| value instanceof Character || value instanceof String || value instanceof Boolean || value instanceof SulfurArray) {
+			return value;
+		}
+		else if(value instanceof List) {
+			List<?> list = (List<?>) value;
+			Object[] elements = new Object[list.size()];
+			for(int i = 0; i < elements.length; i++) {
+				elements[i] = toSulfur(name, list.get(i));
+			}
+			return new SulfurArray(elements);
+		}
+		throw new IllegalArgumentException("Binding "+name+" has unsupported type "+(value == null ? "null" : value.getClass().getSimpleName()));
+	}
+}
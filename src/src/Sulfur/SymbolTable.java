@@ -1,56 +1,295 @@
 package Sulfur;
-import java.util.HashMap;
-import java.util.Map.Entry;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
+// Variables are stored in an array, the Resolver works out which slot each variable uses ahead of time
+// Ints, longs, doubles, and booleans can also be stored unboxed so loops that only do arithmetic don't create garbage
+//
+// Once a table is shared between threads (the global table after the first Task starts) every value is stored boxed,
+// reads are lock free, and writes lock one of a few stripes picked by the slot so writes to different variables rarely wait on each other
 public class SymbolTable {
-	private final HashMap<String, Object> vars;
+	private static final VarHandle VARS = MethodHandles.arrayElementVarHandle(Object[].class);
+	private static final VarHandle FUNCTION_VERSION;
+	static {
+		try {
+			FUNCTION_VERSION = MethodHandles.lookup().findVarHandle(SymbolTable.class, "functionVersion", int.class);
+		} catch(ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	// Must be a power of 2
+	private static final int STRIPES = 16;
+
+	// What kind of value each slot holds, BOXED slots keep their value in vars and the rest keep it in prims
+	private static final byte BOXED = 0;
+	private static final byte INT = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+
+	private final Object[] vars;
 	private final SymbolTable parent;
-	
-	public SymbolTable(SymbolTable parent) {
+	// Only created once an unboxed value is stored, since most tables for function calls never need them
+	private long[] prims;
+	private byte[] kinds;
+	// Changes whenever a function is stored in or removed from this table, which lets call sites cache the function they found here
+	private int functionVersion = 0;
+	// Set on the global table once a Task has started, since tasks can then use it at the same time
+	// Shared tables store every value boxed so each variable is a single reference that can't be seen half written
+	private boolean shared = false;
+	// Only created once the table is shared, writes to a slot lock locks[slot & (STRIPES-1)]
+	private Object[] locks;
+
+	public SymbolTable(SymbolTable parent, int numSlots) {
 		this.parent = parent;
-		this.vars = new HashMap<String, Object>();
+		this.vars = new Object[numSlots];
 	}
-	
-	// Retrieves a variable's value from the current table or the parent's table
-	public Object getValue(Token varTok) {
-		String varName = (String) varTok.value;
-		if(vars.containsKey(varName)) {
-			return vars.get(varName);
-		}
-		else if(parent != null) {
-			return parent.getValue(varTok);
+
+	// Retrieves a variable's value from the table that is depth levels above this one
+	public Object getValue(int depth, int slot, Token varTok) {
+		if(depth >= 0) {
+			SymbolTable table = getTable(depth);
+			Object value = table.shared ? VARS.getAcquire(table.vars, slot) : table.vars[slot];
+			if(value != null) {
+				return value;
+			}
+			if(table.kinds != null && table.kinds[slot] != BOXED) {
+				return table.box(slot);
+			}
 		}
-		Interpreter.error("Variable "+varName+" not defined", varTok.line);
+		Interpreter.error("Variable "+varTok.value+" not defined", varTok.line);
 		return null;
 	}
-	
-	// If the value is already defined in the current table or one of it's parents, it reassigns that variable
-	// Otherwise, it adds a new entry to the current symbol table
-	public void setValue(String varName, Object value) {
-		if(!updateValue(varName, value)) {
-			vars.put(varName, value);
+
+	// The value in a slot of this table, null if the variable isn't defined
+	// Used by the compiled engines, which report undefined variables themselves and have no Token for the variable
+	public Object get(int slot) {
+		Object value = shared ? VARS.getAcquire(vars, slot) : vars[slot];
+		if(value == null && kinds != null && kinds[slot] != BOXED) {
+			return box(slot);
 		}
+		return value;
 	}
-	
-	// Checks the current table and its parents to see if a variable is already defined, and if so, updates the value
-	private boolean updateValue(String varName, Object value) {
-		if(vars.containsKey(varName)) {
-			if(value.getClass() != vars.get(varName).getClass()) {
-				// Type checking disabled, for now
+
+	public void set(int slot, Object value) {
+		setValue(0, slot, value);
+	}
+
+	// The typed getters return the value unboxed if it has that type,
+	// otherwise they throw an UnexpectedResultException holding the boxed value
+	public int getInt(int depth, int slot, Token varTok) throws UnexpectedResultException {
+		if(depth >= 0) {
+			SymbolTable table = getTable(depth);
+			if(table.kinds != null && table.kinds[slot] == INT) {
+				return (int) table.prims[slot];
+			}
+		}
+		Object value = getValue(depth, slot, varTok);
+		if(value instanceof Integer) {
+			return (Integer) value;
+		}
+		throw new UnexpectedResultException(value);
+	}
+
+	public long getLong(int depth, int slot, Token varTok) throws UnexpectedResultException {
+		if(depth >= 0) {
+			SymbolTable table = getTable(depth);
+			if(table.kinds != null && table.kinds[slot] == LONG) {
+				return table.prims[slot];
+			}
+		}
+		Object value = getValue(depth, slot, varTok);
+		if(value instanceof Long) {
+			return (Long) value;
+		}
+		throw new UnexpectedResultException(value);
+	}
+
+	public double getDouble(int depth, int slot, Token varTok) throws UnexpectedResultException {
+		if(depth >= 0) {
+			SymbolTable table = getTable(depth);
+			if(table.kinds != null && table.kinds[slot] == DOUBLE) {
+				return Double.longBitsToDouble(table.prims[slot]);
+			}
+		}
+		Object value = getValue(depth, slot, varTok);
+		if(value instanceof Double) {
+			return (Double) value;
+		}
+		throw new UnexpectedResultException(value);
+	}
+
+	public boolean getBoolean(int depth, int slot, Token varTok) throws UnexpectedResultException {
+		if(depth >= 0) {
+			SymbolTable table = getTable(depth);
+			if(table.kinds != null && table.kinds[slot] == BOOLEAN) {
+				return table.prims[slot] != 0;
+			}
+		}
+		Object value = getValue(depth, slot, varTok);
+		if(value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		throw new UnexpectedResultException(value);
+	}
+
+	// Sets a variable in the table that is depth levels above this one
+	// The Resolver has already decided whether this reassigns an existing variable or defines a new one
+	public void setValue(int depth, int slot, Object value) {
+		SymbolTable table = getTable(depth);
+		if(table.shared) {
+			synchronized(table.lockFor(slot)) {
+				table.storeShared(slot, value);
+			}
+			return;
+		}
+		Object old = table.vars[slot];
+		if(value != old && (value instanceof Expr.FunctionDef || old instanceof Expr.FunctionDef)) {
+			table.functionVersion++;
+		}
+		table.vars[slot] = value;
+		if(table.kinds != null) {
+			table.kinds[slot] = BOXED;
+		}
+	}
+
+	// Computes and stores a variable's new value while holding its lock, so other writes to the variable can't happen in between
+	// Used for assignments whose value reads the variable itself (A count NV count+1), the value can't call anything so it can't wait on another lock
+	public void update(int depth, int slot, Supplier<Object> newValue) {
+		SymbolTable table = getTable(depth);
+		synchronized(table.lockFor(slot)) {
+			table.storeShared(slot, newValue.get());
+		}
+	}
+
+	// The value is published before the version changes, so a call site that sees the new version also sees the new function
+	private void storeShared(int slot, Object value) {
+		Object old = vars[slot];
+		VARS.setRelease(vars, slot, value);
+		if(value != old && (value instanceof Expr.FunctionDef || old instanceof Expr.FunctionDef)) {
+			FUNCTION_VERSION.getAndAdd(this, 1);
+		}
+	}
+
+	private Object lockFor(int slot) {
+		return locks[slot & (STRIPES-1)];
+	}
+
+	// The lock update holds for a slot, for generated code that computes the new value inline instead of in a Supplier
+	// Only exists once the table is shared
+	public Object lock(int slot) {
+		return lockFor(slot);
+	}
+
+	public void setInt(int depth, int slot, int value) {
+		getTable(depth).setPrimitive(slot, INT, value);
+	}
+
+	public void setLong(int depth, int slot, long value) {
+		getTable(depth).setPrimitive(slot, LONG, value);
+	}
+
+	public void setDouble(int depth, int slot, double value) {
+		getTable(depth).setPrimitive(slot, DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	public void setBoolean(int depth, int slot, boolean value) {
+		getTable(depth).setPrimitive(slot, BOOLEAN, value ? 1 : 0);
+	}
+
+	private void setPrimitive(int slot, byte kind, long bits) {
+		if(shared) {
+			synchronized(lockFor(slot)) {
+				storeShared(slot, box(kind, bits));
 			}
-			vars.replace(varName, value);
-			return true;
+			return;
+		}
+		if(kinds == null) {
+			kinds = new byte[vars.length];
+			prims = new long[vars.length];
+		}
+		if(vars[slot] instanceof Expr.FunctionDef) {
+			functionVersion++;
 		}
-		else if(parent != null && parent.updateValue(varName, value)) {
-			return true;
+		vars[slot] = null;
+		prims[slot] = bits;
+		kinds[slot] = kind;
+	}
+
+	// Undefines every variable so the table can be reused for another call to the same function
+	public void clear() {
+		Arrays.fill(vars, null);
+		if(kinds != null) {
+			Arrays.fill(kinds, BOXED);
 		}
-		return false;
+		functionVersion++;
 	}
+
+	// How many slots the table has, which can be more than the function or block using it needs
+	public int capacity() {
+		return vars.length;
+	}
+
+	public int functionVersion() {
+		return shared ? (int) FUNCTION_VERSION.getAcquire(this) : functionVersion;
+	}
+
+	public boolean isShared() {
+		return shared;
+	}
+
+	// Called before the table is used by another thread, while this is still the only thread using it
+	public void share() {
+		if(shared) {
+			return;
+		}
+		if(kinds != null) {
+			for(int i = 0; i < vars.length; i++) {
+				vars[i] = box(i);
+			}
+			kinds = null;
+			prims = null;
+		}
+		locks = new Object[STRIPES];
+		for(int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+		shared = true;
+	}
+	
+	// Boxes an unboxed value for code that needs it as an Object
+	private Object box(int slot) {
+		return kinds[slot] == BOXED ? vars[slot] : box(kinds[slot], prims[slot]);
+	}
+	
+	private static Object box(byte kind, long bits) {
+		switch(kind) {
+		case INT:
+			return (int) bits;
+		case LONG:
+			return bits;
+		case DOUBLE:
+			return Double.longBitsToDouble(bits);
+		default:
+			return bits != 0;
+		}
+	}
+
+	SymbolTable getTable(int depth) {
+		SymbolTable table = this;
+		for(int i = 0; i < depth; i++) {
+			table = table.parent;
+		}
+		return table;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder s = new StringBuilder();
-		for(Entry<String, Object> ent : vars.entrySet()) {
-			s.append(ent.getKey() + " = " + ent.getValue() + ", ");
+		for(int i = 0; i < vars.length; i++) {
+			s.append(i + " = " + (kinds != null ? box(i) : vars[i]) + ", ");
 		}
 		return s.toString();
 	}
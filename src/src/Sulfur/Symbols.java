@@ -0,0 +1,92 @@
+package Sulfur;
+import java.util.Arrays;
+
+/*
+ * Gives every distinct identifier in a program a dense int ID, starting from 0 in the order the Lexer first sees them.
+ * The Lexer looks names up straight from the source, so a name is only made into a String the first time it appears,
+ * and every later use of it is one hash of its characters and a comparison against the one String for that name.
+ * Tokens for identifiers carry their ID (Token.symbol), and the Resolver indexes arrays by it instead of hashing names.
+ * The names are only used for error messages and the generated code of the compilers.
+ *
+ * The table is open addressing over a power of two array of IDs, -1 marks an empty entry.
+ */
+public final class Symbols {
+	private String[] names = new String[64];
+	private int[] hashes = new int[64];
+	private int[] table = newTable(128);
+	private int size = 0;
+
+	// ID of the identifier in source between start (inclusive) and end (exclusive), adding it if it's new
+	int intern(String source, int start, int end) {
+		int hash = 0;
+		for(int i = start; i < end; i++) {
+			hash = 31 * hash + source.charAt(i);
+		}
+		int mask = table.length - 1;
+		for(int i = hash & mask; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if(id < 0) {
+				return add(source.substring(start, end), hash, i);
+			}
+			if(hashes[id] == hash && names[id].regionMatches(0, source, start, end - start) && names[id].length() == end - start) {
+				return id;
+			}
+		}
+	}
+
+	public int intern(String name) {
+		return intern(name, 0, name.length());
+	}
+
+	// ID of a name, -1 if no identifier with that name has been interned
+	public int id(String name) {
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+		for(int i = hash & mask; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if(id < 0) {
+				return -1;
+			}
+			if(hashes[id] == hash && names[id].equals(name)) {
+				return id;
+			}
+		}
+	}
+
+	public String name(int id) {
+		return names[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int add(String name, int hash, int index) {
+		if(size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int id = size++;
+		names[id] = name;
+		hashes[id] = hash;
+		table[index] = id;
+		// Kept at most half full so probe sequences stay short
+		if(size * 2 > table.length) {
+			table = newTable(table.length * 2);
+			for(int i = 0; i < size; i++) {
+				int j = hashes[i] & (table.length - 1);
+				while(table[j] >= 0) {
+					j = (j + 1) & (table.length - 1);
+				}
+				table[j] = i;
+			}
+		}
+		return id;
+	}
+
+	private static int[] newTable(int capacity) {
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+		return table;
+	}
+}
@@ -0,0 +1,80 @@
+package Sulfur;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * A function call started with X, which runs at the same time as the code that started it.
+ * EX:
+ * A t OV X f(10)
+ * P(t~await())
+ *
+ * The function is looked up and its arguments are evaluated before X finishes, everything else happens in the task.
+ * Errors in the task, including badly typed arguments, are reported by ~await(), so a task that is never awaited fails silently.
+ * Tasks run on virtual threads when the JVM has them (Java 21+) and on a pool of daemon threads otherwise,
+ * so the program ends when its top level code does whether or not its tasks have finished.
+ */
+public class Task {
+	private static final ExecutorService executor = createExecutor();
+
+	// How the engine running the program calls a function, the arguments haven't been checked yet
+	public interface Call {
+		Object call(Expr.FunctionDef func, Object[] args);
+	}
+
+	private final String funcName;
+	private final Future<Object> result;
+
+	private Task(String funcName, Future<Object> result) {
+		this.funcName = funcName;
+		this.result = result;
+	}
+
+	// Starts calling func with already evaluated arguments, func is the value of the variable the call uses
+	public static Task start(Object func, Object[] args, String funcName, int lineNum, Call call) {
+		if(!(func instanceof Expr.FunctionDef)) {
+			Interpreter.notAFunctionError(func, funcName, lineNum);
+		}
+		Expr.FunctionDef funcExpr = (Expr.FunctionDef) func;
+		return new Task(funcName, executor.submit(() -> call.call(funcExpr, args)));
+	}
+
+	// Waits for the task to finish and returns what the function returned
+	// An error in the task is thrown again here, exactly as it would have been if the function had been called normally
+	public Object await(int lineNum) {
+		try {
+			return result.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if(e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Interpreter.error("Interrupted while waiting for task "+funcName, lineNum);
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Task("+funcName+")";
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor is looked up by reflection so the project still builds and runs on Java 17
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "sulfur-task");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package Sulfur;
+
+/*
+ * How a program stopped running, returned by every engine instead of exiting the JVM or throwing out of run().
+ * A program either runs to the end, stops early with Q, fails with an error, or is stopped for going over one of its Limits.
+ *
+ * Q throws a Quit, which unwinds to the engine's run method the same way an error does,
+ * so finally blocks still run and the JVM stays up for the next program.
+ */
+public final class Termination {
+	public enum Kind {
+		COMPLETED, QUIT, ERROR, LIMIT
+	}
+
+	public static final Termination COMPLETED = new Termination(Kind.COMPLETED, null);
+	public static final Termination QUIT = new Termination(Kind.QUIT, null);
+
+	// Thrown by Q, it has no stack trace since it isn't an error
+	public static final class Quit extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public Quit() {
+			super("Quit", null, false, false);
+		}
+	}
+
+	// Thrown when a program goes over one of its Limits, which can happen very often for a program that is expected to run away
+	public static final class LimitExceeded extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public LimitExceeded(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	public final Kind kind;
+	// What the program failed with, null unless kind is ERROR or LIMIT
+	public final Throwable error;
+
+	private Termination(Kind kind, Throwable error) {
+		this.kind = kind;
+		this.error = error;
+	}
+
+	public static Termination error(Throwable error) {
+		return new Termination(Kind.ERROR, error);
+	}
+
+	// Runs a program and turns the way it stopped into a Termination
+	public static Termination run(Runnable program) {
+		try {
+			program.run();
+			return COMPLETED;
+		} catch(Quit e) {
+			return QUIT;
+		} catch(LimitExceeded e) {
+			return new Termination(Kind.LIMIT, e);
+		} catch(RuntimeException e) {
+			return error(e);
+		} catch(StackOverflowError e) {
+			return error(new RuntimeException("Stack overflow, too many nested function calls"));
+		}
+	}
+
+	// Going over a limit counts as failing
+	public boolean failed() {
+		return kind == Kind.ERROR || kind == Kind.LIMIT;
+	}
+
+	// Error message for a failed program, null otherwise
+	public String message() {
+		return error != null ? error.getMessage() : null;
+	}
+
+	// Exit status a process running the program should end with
+	public int exitCode() {
+		return kind == Kind.LIMIT ? 2 : failed() ? 1 : 0;
+	}
+
+	@Override
+	public String toString() {
+		return failed() ? kind+": "+message() : kind.toString();
+	}
+}
@@ -6,17 +6,21 @@ public class Token {
 	public final TokenType type;
 	public final Object value;
 	public final int line;
+	// ID of an identifier in the program's Symbols, -1 for every other token
+	public final int symbol;
 	
 	public Token(TokenType type, int line) {
-		this.type = type;
-		this.line = line;
-		this.value = null;
+		this(type, null, line, -1);
 	}
 	public Token(TokenType type, Object value, int line) {
+		this(type, value, line, -1);
+	}
+	public Token(TokenType type, Object value, int line, int symbol) {
 		// create token with the corresponding type and and value
 		this.type = type;
 		this.value = value;
 		this.line = line;
+		this.symbol = symbol;
 	}
 	
 	
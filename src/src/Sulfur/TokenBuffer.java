@@ -0,0 +1,110 @@
+package Sulfur;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * The tokens the Lexer makes from a program, stored as parallel arrays instead of one Token object per token.
+ * Token i has the type types[i], starts on line lines[i] at character offsets[i] of the source,
+ * If it is an identifier, valueIndexes[i] is its ID in symbols, if it is a literal its value is values[valueIndexes[i]],
+ * and otherwise valueIndexes[i] is -1.
+ *
+ * Most tokens are letters and symbols with no value, so this takes 13 bytes a token plus the values,
+ * where an ArrayList of Tokens takes around 28 bytes a token before counting the values.
+ * The Parser looks ahead by reading the arrays directly and only makes Token objects for the tokens the tree keeps.
+ */
+public class TokenBuffer {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private byte[] types = new byte[64];
+	private int[] lines = new int[64];
+	private int[] offsets = new int[64];
+	private int[] valueIndexes = new int[64];
+	private Object[] values = new Object[16];
+	private int size = 0;
+	private int numValues = 0;
+	private final Symbols symbols;
+
+	TokenBuffer(Symbols symbols) {
+		this.symbols = symbols;
+	}
+
+	public Symbols symbols() {
+		return symbols;
+	}
+
+	void add(TokenType type, int line, int offset) {
+		add(type, line, offset, -1);
+	}
+
+	void add(TokenType type, Object value, int line, int offset) {
+		if(numValues == values.length) {
+			values = Arrays.copyOf(values, numValues * 2);
+		}
+		values[numValues] = value;
+		add(type, line, offset, numValues++);
+	}
+
+	void addIdentifier(int symbol, int line, int offset) {
+		add(TokenType.IDENTIFIER, line, offset, symbol);
+	}
+
+	private void add(TokenType type, int line, int offset, int valueIndex) {
+		if(size == types.length) {
+			int capacity = size * 2;
+			types = Arrays.copyOf(types, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			valueIndexes = Arrays.copyOf(valueIndexes, capacity);
+		}
+		types[size] = (byte) type.ordinal();
+		lines[size] = line;
+		offsets[size] = offset;
+		valueIndexes[size] = valueIndex;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public TokenType type(int i) {
+		return TYPES[types[i]];
+	}
+
+	public int line(int i) {
+		return lines[i];
+	}
+
+	// Index of the token's first character in the source
+	public int offset(int i) {
+		return offsets[i];
+	}
+
+	// The name of an identifier, null for tokens that aren't identifiers or literals
+	public Object value(int i) {
+		int valueIndex = valueIndexes[i];
+		if(valueIndex < 0) {
+			return null;
+		}
+		return types[i] == TokenType.IDENTIFIER.ordinal() ? symbols.name(valueIndex) : values[valueIndex];
+	}
+
+	// ID of an identifier in symbols, -1 for other tokens
+	public int symbol(int i) {
+		return types[i] == TokenType.IDENTIFIER.ordinal() ? valueIndexes[i] : -1;
+	}
+
+	// Makes a Token object for the token, for the parts of the tree that keep one
+	public Token token(int i) {
+		return new Token(type(i), value(i), lines[i], symbol(i));
+	}
+
+	// Every token as a Token object, which is how tokens used to be stored
+	public ArrayList<Token> toList() {
+		ArrayList<Token> list = new ArrayList<Token>(size);
+		for(int i = 0; i < size; i++) {
+			list.add(token(i));
+		}
+		return list;
+	}
+}
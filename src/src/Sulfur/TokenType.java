@@ -23,7 +23,7 @@ public enum TokenType {
 	
 	private char tokenChar;
 	private static final HashMap<Character, TokenType> charMap = new HashMap<>();
-	public static final TokenType[] dataTypeTokens = new TokenType[] {TokenType.BOOLEAN_T, TokenType.CHARACTER_T, TokenType.DOUBLE_T, TokenType.FUNCTION, TokenType.FLOAT_T, TokenType.INTEGER_T, TokenType.LONG_T, TokenType.STRING_T};
+	public static final TokenType[] dataTypeTokens = new TokenType[] {TokenType.BOOLEAN_T, TokenType.CHARACTER_T, TokenType.DOUBLE_T, TokenType.FUNCTION, TokenType.FLOAT_T, TokenType.INTEGER_T, TokenType.LONG_T, TokenType.OBJECT_T, TokenType.STRING_T};
 	public static final TokenType[] dataTokens = new TokenType[] {TokenType.BOOLEAN, TokenType.CHARACTER, TokenType.DOUBLE, TokenType.FLOAT, TokenType.INTEGER, TokenType.LONG, TokenType.STRING};
 	
 	private TokenType(char tokenChar) {
@@ -0,0 +1,14 @@
+package Sulfur;
+
+// Thrown by the Interpreter's typed evaluate methods when a value does not have the primitive type they were asked for
+// Holds the value so the caller can fall back to using it boxed
+public class UnexpectedResultException extends Exception {
+	private static final long serialVersionUID = 1L;
+	final Object result;
+
+	public UnexpectedResultException(Object result) {
+		// These are thrown as part of normal execution, so skip filling in the stack trace
+		super(null, null, false, false);
+		this.result = result;
+	}
+}
@@ -0,0 +1,320 @@
+package Sulfur;
+import java.util.Arrays;
+
+/*
+ * Runs bytecode produced by the BytecodeCompiler.
+ * Each function call gets a flat array of registers instead of a chain of symbol tables,
+ * and the instructions are run by a single switch inside a loop instead of walking the expression tree.
+ * All the operations are done by the same static methods the Interpreter uses so the results and errors match.
+ */
+public class VirtualMachine {
+	private final Bytecode.Program program;
+	// Shared once the first Task starts, like the Interpreter's global symbol table
+	private final SymbolTable globals;
+	// Where PRINT sends its output
+	private final OutputSink out;
+
+	public VirtualMachine(Bytecode.Program program) {
+		this(program, OutputSink.standard());
+	}
+
+	public VirtualMachine(Bytecode.Program program, OutputSink out) {
+		this.program = program;
+		this.globals = new SymbolTable(null, program.numGlobals);
+		this.out = out;
+	}
+
+	public Termination run() {
+		Bytecode.Chunk main = program.main;
+		try {
+			return Termination.run(() -> execute(main, new Object[main.numRegs], 0));
+		} finally {
+			out.flush();
+		}
+	}
+
+	// Runs a chunk until it ends or returns, callLine is the line the function was called from
+	private Object execute(Bytecode.Chunk chunk, Object[] regs, int callLine) {
+		return execute(chunk, regs, callLine, 0, false);
+	}
+
+	// Starts at pc instead of the beginning of the chunk, if update is set it also returns at ENDUPDATE
+	private Object execute(Bytecode.Chunk chunk, Object[] regs, int callLine, int pc, boolean update) {
+		final int[] code = chunk.code;
+		final Object[] k = chunk.constants;
+		final SymbolTable globals = this.globals;
+
+		while(true) {
+			switch(code[pc]) {
+			case Bytecode.LOADK:
+				regs[code[pc+1]] = k[code[pc+2]];
+				pc += 3;
+				break;
+			case Bytecode.GETL: {
+				Object value = regs[code[pc+2]];
+				if(value == null) {
+					undefined(k[code[pc+3]], code[pc+4]);
+				}
+				regs[code[pc+1]] = value;
+				pc += 5;
+				break;
+			}
+			case Bytecode.GETG: {
+				Object value = globals.get(code[pc+2]);
+				if(value == null) {
+					undefined(k[code[pc+3]], code[pc+4]);
+				}
+				regs[code[pc+1]] = value;
+				pc += 5;
+				break;
+			}
+			case Bytecode.SETG:
+				globals.set(code[pc+1], regs[code[pc+2]]);
+				pc += 3;
+				break;
+			case Bytecode.UPDATEG:
+				if(globals.isShared()) {
+					int src = code[pc+2];
+					int start = pc + 4;
+					int line = callLine;
+					// The value's code can't call anything, so the nested run only leaves through ENDUPDATE or an error
+					globals.update(0, code[pc+1], () -> {
+						execute(chunk, regs, line, start, true);
+						return regs[src];
+					});
+					pc = code[pc+3];
+				}
+				else {
+					pc += 4;
+				}
+				break;
+			case Bytecode.AWAIT:
+				regs[code[pc+1]] = Interpreter.await(regs[code[pc+2]], code[pc+3]);
+				pc += 4;
+				break;
+			case Bytecode.ENDUPDATE:
+				if(update) {
+					return null;
+				}
+				pc += 1;
+				break;
+			case Bytecode.UNDEF:
+				undefined(k[code[pc+2]], code[pc+3]);
+				pc += 4;
+				break;
+			case Bytecode.CHECKTYPE: {
+				int reg = code[pc+1];
+				regs[reg] = Interpreter.checkAssignedValue(regs[reg], Bytecode.TYPES[code[pc+2]], code[pc+3], code[pc+4]);
+				pc += 5;
+				break;
+			}
+			case Bytecode.ADD:
+				regs[code[pc+1]] = OperationPerformer.add(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.SUB:
+				regs[code[pc+1]] = OperationPerformer.sub(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.MUL:
+				regs[code[pc+1]] = OperationPerformer.multiply(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.DIV:
+				regs[code[pc+1]] = OperationPerformer.divide(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.MOD:
+				regs[code[pc+1]] = OperationPerformer.modulus(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.AND:
+				regs[code[pc+1]] = OperationPerformer.and(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.OR:
+				regs[code[pc+1]] = OperationPerformer.or(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.EQ:
+				regs[code[pc+1]] = OperationPerformer.equality(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.LT:
+				regs[code[pc+1]] = OperationPerformer.less_than(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.GT:
+				regs[code[pc+1]] = OperationPerformer.greater_than(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.NE:
+				regs[code[pc+1]] = OperationPerformer.not_eq(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.LE:
+				regs[code[pc+1]] = OperationPerformer.lt_eq(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.GE:
+				regs[code[pc+1]] = OperationPerformer.gt_eq(regs[code[pc+2]], regs[code[pc+3]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.UNARY:
+				regs[code[pc+1]] = Interpreter.performUnaryOp(Bytecode.TYPES[code[pc+3]], regs[code[pc+2]], code[pc+4]);
+				pc += 5;
+				break;
+			case Bytecode.NEWARRAY:
+				regs[code[pc+1]] = Interpreter.newArray(copyRegs(regs, code[pc+2], code[pc+3]));
+				pc += 4;
+				break;
+			case Bytecode.ARRAYCALL:
+				int array = code[pc+3];
+				int numArgs = code[pc+4];
+				regs[code[pc+1]] = Interpreter.performArrayMethod(Bytecode.ARRAY_METHODS[code[pc+2]], regs[array],
+						numArgs > 0 ? regs[array+1] : null, numArgs > 1 ? regs[array+2] : null, numArgs, code[pc+5]);
+				pc += 6;
+				break;
+			case Bytecode.CALL:
+				regs[code[pc+1]] = call(regs[code[pc+2]], regs, code[pc+3], code[pc+4], (String) k[code[pc+5]], code[pc+6]);
+				pc += 7;
+				break;
+			case Bytecode.TAILCALL: {
+				// A function returning a call to itself reuses its registers and starts over instead of growing the Java stack
+				Object func = regs[code[pc+2]];
+				if(func != chunk.func) {
+					regs[code[pc+1]] = call(func, regs, code[pc+3], code[pc+4], (String) k[code[pc+5]], code[pc+6]);
+					pc += 7;
+					break;
+				}
+				int count = code[pc+4];
+				callLine = code[pc+6];
+				Interpreter.checkArgCount(count, chunk.func, (String) k[code[pc+5]], callLine);
+				Object[] args = checkArguments(chunk.func, regs, code[pc+3], count, callLine);
+				Arrays.fill(regs, null);
+				for(int i = 0; i < count; i++) {
+					regs[chunk.func.parameters.get(i).slot] = args[i];
+				}
+				pc = 0;
+				break;
+			}
+			case Bytecode.EXECUTE: {
+				String funcName = (String) k[code[pc+5]];
+				int line = code[pc+6];
+				globals.share();
+				regs[code[pc+1]] = Task.start(regs[code[pc+2]], copyRegs(regs, code[pc+3], code[pc+4]), funcName, line,
+						(func, args) -> invoke(func, args, funcName, line));
+				pc += 7;
+				break;
+			}
+			case Bytecode.JUMP:
+				pc = code[pc+1];
+				break;
+			case Bytecode.JUMPF:
+				if(Interpreter.checkCondition(regs[code[pc+1]], code[pc+3])) {
+					pc += 4;
+				}
+				else {
+					pc = code[pc+2];
+				}
+				break;
+			case Bytecode.PRINT:
+				out.print(regs[code[pc+1]]);
+				pc += 2;
+				break;
+			case Bytecode.RETURN: {
+				// A return whose value is null (like calling a function with no return type) doesn't actually return
+				Object res = regs[code[pc+1]];
+				if(res != null) {
+					return Interpreter.checkReturnValue(res, chunk.func, callLine);
+				}
+				pc += 2;
+				break;
+			}
+			case Bytecode.TOPRETURN: {
+				Object res = regs[code[pc+1]];
+				if(res != null) {
+					Interpreter.checkForInvalidUsage(res, false);
+				}
+				pc += 2;
+				break;
+			}
+			case Bytecode.INVALID:
+				Interpreter.checkForInvalidUsage(Bytecode.TYPES[code[pc+1]], false);
+				pc += 2;
+				break;
+			case Bytecode.CLEAR: {
+				int first = code[pc+1];
+				for(int i = first; i < first + code[pc+2]; i++) {
+					regs[i] = null;
+				}
+				pc += 3;
+				break;
+			}
+			case Bytecode.QUIT:
+				throw new Termination.Quit();
+			case Bytecode.TESTSET:
+				if(Interpreter.shortCircuits(Bytecode.TYPES[code[pc+3]], regs[code[pc+2]])) {
+					regs[code[pc+1]] = regs[code[pc+2]];
+					pc = code[pc+4];
+				}
+				else {
+					pc += 5;
+				}
+				break;
+			case Bytecode.END:
+				return chunk.func != null ? Interpreter.checkReturnValue(null, chunk.func, callLine) : null;
+			default:
+				throw new RuntimeException("Unknown opcode "+code[pc]+" at "+pc+" in "+chunk.name);
+			}
+		}
+	}
+
+	// Calls a function with the arguments in regs[first] to regs[first+count-1]
+	private Object call(Object func, Object[] regs, int first, int count, String funcName, int line) {
+		if(!(func instanceof Expr.FunctionDef)) {
+			Interpreter.notAFunctionError(func, funcName, line);
+		}
+		Expr.FunctionDef funcExpr = (Expr.FunctionDef) func;
+		Interpreter.checkArgCount(count, funcExpr, funcName, line);
+
+		Bytecode.Chunk chunk = program.functions.get(funcExpr);
+		Object[] funcRegs = new Object[chunk.numRegs];
+		for(int i = 0; i < count; i++) {
+			Expr.Parameter param = funcExpr.parameters.get(i);
+			funcRegs[param.slot] = Interpreter.checkArgument(regs[first + i], param, line);
+		}
+		return execute(chunk, funcRegs, line);
+	}
+
+	// Calls a function on a Task with arguments that haven't been checked yet
+	// Tasks only share the globals, every call has its own registers
+	private Object invoke(Expr.FunctionDef funcExpr, Object[] args, String funcName, int line) {
+		Interpreter.checkArguments(funcExpr, args, funcName, line);
+		Bytecode.Chunk chunk = program.functions.get(funcExpr);
+		Object[] funcRegs = new Object[chunk.numRegs];
+		for(int i = 0; i < args.length; i++) {
+			funcRegs[funcExpr.parameters.get(i).slot] = args[i];
+		}
+		return execute(chunk, funcRegs, line);
+	}
+
+	// Checks the arguments of a tail call before the registers they are in get cleared
+	private static Object[] checkArguments(Expr.FunctionDef funcExpr, Object[] regs, int first, int count, int line) {
+		Object[] args = new Object[count];
+		for(int i = 0; i < count; i++) {
+			args[i] = Interpreter.checkArgument(regs[first + i], funcExpr.parameters.get(i), line);
+		}
+		return args;
+	}
+
+	private static Object[] copyRegs(Object[] regs, int first, int count) {
+		Object[] values = new Object[count];
+		System.arraycopy(regs, first, values, 0, count);
+		return values;
+	}
+
+	private static void undefined(Object varName, int line) {
+		Interpreter.error("Variable "+varName+" not defined", line);
+	}
+}